@@ -0,0 +1,185 @@
+/**
+ * Copyright 2023 Zhang Guanhu
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.artbits.orm;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+public final class Advisor {
+
+    private final static Pattern STRING = Pattern.compile("'(?:[^']|'')*'");
+    private final static Pattern NUMBER = Pattern.compile("(?<![\\w.])-?\\d+(\\.\\d+)?(?![\\w.])");
+    private final static Pattern LIST = Pattern.compile("\\(\\s*\\?(\\s*,\\s*\\?)*\\s*\\)");
+    private final static Pattern TABLE = Pattern.compile("^(?:select .*? from|update|delete from) (\\w+)");
+    private final static Pattern WHERE = Pattern.compile(" where (.*?)(?: group by | order by | limit |;|$)");
+    private final static Pattern ORDER = Pattern.compile(" order by (.*?)(?: limit |;|$)");
+    private final static Pattern PREDICATE = Pattern.compile("(\\w+)\\s*(=|<=|>=|<>|!=|<|>| in\\b| like\\b| between\\b| is\\b)");
+
+    private final Map<String, Shape> shapes = new ConcurrentHashMap<>();
+    private final double sampleRate;
+    private final Function<String, Plan> explainer;
+    private final ExecutorService executor;
+
+
+    Advisor(double sampleRate, Function<String, Plan> explainer) {
+        this.sampleRate = sampleRate;
+        this.explainer = explainer;
+        this.executor = (sampleRate > 0) ? Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "orm-advisor");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+    }
+
+
+    boolean sample() {
+        return sampleRate > 0 && (sampleRate >= 1 || ThreadLocalRandom.current().nextDouble() < sampleRate);
+    }
+
+
+    void record(String sql, long nanos) {
+        String lower = sql.trim().toLowerCase();
+        if (!(lower.startsWith("select") || lower.startsWith("update") || lower.startsWith("delete"))) {
+            return;
+        }
+        String shape = shape(lower);
+        Matcher table = TABLE.matcher(shape);
+        if (!table.find() || table.group(1).startsWith("sqlite_") || table.group(1).equals(SQLTemplate.SCHEMA_TABLE)) {
+            return;
+        }
+        Shape stats = shapes.computeIfAbsent(shape, key -> {
+            Shape created = new Shape(key, table.group(1));
+            executor.execute(() -> created.explain(sql));
+            return created;
+        });
+        stats.count.increment();
+        stats.totalNanos.add(nanos);
+        stats.maxNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+
+    void close() {
+        Optional.ofNullable(executor).ifPresent(ExecutorService::shutdownNow);
+    }
+
+
+    public List<String> suggestions() {
+        return shapes.values().stream()
+                .map(shape -> shape.suggestion)
+                .filter(Objects::nonNull)
+                .distinct()
+                .collect(Collectors.toList());
+    }
+
+
+    public String report() {
+        StringBuilder builder = new StringBuilder();
+        List<Shape> list = new ArrayList<>(shapes.values());
+        list.sort(Comparator.comparingLong((Shape shape) -> shape.totalNanos.sum()).reversed());
+        for (Shape shape : list.subList(0, Math.min(10, list.size()))) {
+            long count = shape.count.sum();
+            builder.append(String.format("%10.2f ms total %8d sampled %8.3f ms avg %8.3f ms max  %s%n",
+                    shape.totalNanos.sum() / 1e6, count, shape.totalNanos.sum() / 1e6 / Math.max(1, count),
+                    shape.maxNanos.get() / 1e6, shape.sql));
+            Plan plan = shape.plan;
+            if (plan != null && (plan.fullScan() || plan.tempSort())) {
+                builder.append(String.format("%12s%s%s%n", "", plan.fullScan() ? "[full scan] " : "", plan.tempSort() ? "[temp sort] " : ""));
+            }
+            Optional.ofNullable(shape.suggestion).ifPresent(s -> builder.append(String.format("%12s%s%n", "", s)));
+        }
+        return builder.toString();
+    }
+
+
+    static String shape(String sql) {
+        String shape = STRING.matcher(sql.trim().toLowerCase()).replaceAll("?");
+        shape = NUMBER.matcher(shape).replaceAll("?");
+        shape = LIST.matcher(shape).replaceAll("(?)");
+        return shape.replaceAll("\\s+", " ");
+    }
+
+
+    private final class Shape {
+
+        final String sql;
+        final String table;
+        final LongAdder count = new LongAdder();
+        final LongAdder totalNanos = new LongAdder();
+        final AtomicLong maxNanos = new AtomicLong();
+        volatile Plan plan;
+        volatile String suggestion;
+
+
+        Shape(String sql, String table) {
+            this.sql = sql;
+            this.table = table;
+        }
+
+
+        void explain(String example) {
+            try {
+                plan = explainer.apply(example);
+            } catch (RuntimeException e) {
+                return;
+            }
+            if (!plan.fullScan() && !plan.tempSort()) {
+                return;
+            }
+            Set<String> equalities = new LinkedHashSet<>();
+            Set<String> ranges = new LinkedHashSet<>();
+            Matcher where = WHERE.matcher(sql);
+            if (where.find()) {
+                Matcher predicate = PREDICATE.matcher(where.group(1));
+                while (predicate.find()) {
+                    String column = predicate.group(1);
+                    if (!column.equals("and") && !column.equals("or") && !column.equals("not")) {
+                        (predicate.group(2).trim().equals("=") || predicate.group(2).trim().equals("in") ? equalities : ranges).add(column);
+                    }
+                }
+            }
+            List<String> columns = new ArrayList<>(equalities);
+            ranges.stream().filter(c -> !columns.contains(c)).forEach(columns::add);
+            Matcher order = ORDER.matcher(sql);
+            if (plan.tempSort() && order.find()) {
+                for (String column : order.group(1).split(",")) {
+                    String name = column.trim();
+                    if (!name.isEmpty() && !columns.contains(name.split(" ")[0])) {
+                        columns.add(name);
+                    }
+                }
+            }
+            columns.remove("id");
+            if (columns.size() == 1 && !columns.get(0).contains(" ")) {
+                suggestion = String.format("%s: @Column(index = true) on field %s", table, columns.get(0));
+            } else if (!columns.isEmpty()) {
+                String list = columns.stream().map(c -> "\"" + c + "\"").collect(Collectors.joining(", "));
+                suggestion = String.format("%s: @Index(columns = {%s})", table, list);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,117 @@
+/**
+ * Copyright 2023 Zhang Guanhu
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.artbits.orm;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public final class Aggregate {
+
+    final List<String> functions = new ArrayList<>();
+    final Options options = new Options();
+
+
+    Aggregate() { }
+
+
+    public Aggregate count() {
+        return function("count(*)");
+    }
+
+
+    public Aggregate count(String column) {
+        return function(String.format("count(%s)", column));
+    }
+
+
+    public Aggregate sum(String column) {
+        return function(String.format("sum(%s)", column));
+    }
+
+
+    public Aggregate average(String column) {
+        return function(String.format("avg(%s)", column));
+    }
+
+
+    public Aggregate max(String column) {
+        return function(String.format("max(%s)", column));
+    }
+
+
+    public Aggregate min(String column) {
+        return function(String.format("min(%s)", column));
+    }
+
+
+    public Aggregate where(String predicate, Object... args) {
+        options.where(predicate, args);
+        return this;
+    }
+
+
+    public Aggregate group(String columns) {
+        options.group(columns);
+        return this;
+    }
+
+
+    String[] groupColumns() {
+        if (options.groupColumns == null) {
+            return new String[0];
+        }
+        String[] columns = options.groupColumns.split(",");
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = columns[i].trim();
+        }
+        return columns;
+    }
+
+
+    Options toOptions() {
+        if (functions.isEmpty()) {
+            throw new IllegalArgumentException("No aggregate function specified");
+        }
+        List<String> columns = new ArrayList<>(functions);
+        for (String column : groupColumns()) {
+            columns.add(column);
+        }
+        return options.select(columns.toArray(new String[0]));
+    }
+
+
+    Aggregate mergeable() {
+        for (String function : new ArrayList<>(functions)) {
+            String column = function.substring(function.indexOf('(') + 1, function.length() - 1);
+            if (function.startsWith("avg(")) {
+                sum(column).count(column);
+            } else if (function.startsWith("max(") || function.startsWith("min(")) {
+                count(column);
+            }
+        }
+        return this;
+    }
+
+
+    private Aggregate function(String function) {
+        if (!functions.contains(function)) {
+            functions.add(function);
+        }
+        return this;
+    }
+
+}
@@ -0,0 +1,95 @@
+/**
+ * Copyright 2023 Zhang Guanhu
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.artbits.orm;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+final class ChangeTracker {
+
+    private final Map<Key, Object[]> snapshots = new ConcurrentHashMap<>();
+    private final ReferenceQueue<Object> queue = new ReferenceQueue<>();
+
+
+    <T> void track(T t) {
+        expunge();
+        snapshots.put(new Key(t, queue), new Reflect<>(t).getValues());
+    }
+
+
+    <T> Set<String> changes(T t) {
+        Object[] snapshot = snapshots.get(new Key(t, null));
+        if (snapshot == null) {
+            return null;
+        }
+        Set<String> columns = new LinkedHashSet<>();
+        Reflect<T> reflect = new Reflect<>(t);
+        Object[] values = reflect.getValues();
+        Iterator<String> names = reflect.getNames().iterator();
+        for (int i = 0; i < values.length; i++) {
+            String name = names.next();
+            if (!Objects.equals(name, "id") && !Objects.equals(values[i], snapshot[i])) {
+                columns.add(name);
+            }
+        }
+        return columns;
+    }
+
+
+    private void expunge() {
+        Reference<?> reference;
+        while ((reference = queue.poll()) != null) {
+            snapshots.remove(reference);
+        }
+    }
+
+
+    private static final class Key extends WeakReference<Object> {
+
+        private final int hash;
+
+
+        Key(Object referent, ReferenceQueue<Object> queue) {
+            super(referent, queue);
+            hash = System.identityHashCode(referent);
+        }
+
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Object referent = get();
+            return referent != null && referent == ((Key) o).get();
+        }
+
+    }
+
+}
@@ -26,5 +26,11 @@ import java.lang.annotation.Target;
 @Retention(RetentionPolicy.RUNTIME)
 public @interface Column {
     boolean index() default false;
+    boolean unique() default false;
     boolean ignore() default false;
+    boolean lazy() default false;
+    boolean fulltext() default false;
+    boolean compress() default false;
+    int compressMin() default 256;
+    Class<? extends Codec> codec() default DeflateCodec.class;
 }
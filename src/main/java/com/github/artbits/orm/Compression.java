@@ -0,0 +1,75 @@
+/**
+ * Copyright 2023 Zhang Guanhu
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.artbits.orm;
+
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+final class Compression {
+
+    private final static byte RAW = 0;
+    private final static byte ENCODED = 1;
+
+    private final static ClassValue<Codec> CODECS = new ClassValue<Codec>() {
+        @Override
+        protected Codec computeValue(Class<?> type) {
+            try {
+                return (Codec) type.getDeclaredConstructor().newInstance();
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+    };
+
+
+    static boolean isCompressed(Field field) {
+        return field.isAnnotationPresent(Column.class) && field.getAnnotation(Column.class).compress();
+    }
+
+
+    static byte[] encode(Field field, String value) {
+        if (value == null) {
+            return null;
+        }
+        Column column = field.getAnnotation(Column.class);
+        byte[] data = value.getBytes(StandardCharsets.UTF_8);
+        byte[] encoded = (data.length >= column.compressMin()) ? CODECS.get(column.codec()).encode(data) : null;
+        boolean compressed = encoded != null && encoded.length < data.length;
+        byte[] payload = compressed ? encoded : data;
+        byte[] bytes = new byte[payload.length + 1];
+        bytes[0] = compressed ? ENCODED : RAW;
+        System.arraycopy(payload, 0, bytes, 1, payload.length);
+        return bytes;
+    }
+
+
+    static String decode(Field field, byte[] bytes) {
+        if (bytes == null) {
+            return null;
+        }
+        if (bytes.length == 0 || (bytes[0] != RAW && bytes[0] != ENCODED)) {
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+        byte[] payload = Arrays.copyOfRange(bytes, 1, bytes.length);
+        if (bytes[0] == ENCODED) {
+            payload = CODECS.get(field.getAnnotation(Column.class).codec()).decode(payload);
+        }
+        return new String(payload, StandardCharsets.UTF_8);
+    }
+
+}
@@ -16,6 +16,8 @@
 
 package com.github.artbits.orm;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.function.Consumer;
 
 public final class Config {
@@ -23,10 +25,23 @@ public final class Config {
     public String driver;
     public String username;
     public String password;
+    public List<String> replicas = new ArrayList<>();
+    public String routing = Routing.ROUND_ROBIN;
+    public long readYourWritesMillis = 0;
     public int initSize = 30;
     public int maxSize = 200;
     public int minIdle = 10;
     public int maxIdle = 20;
+    public int parallelism = Runtime.getRuntime().availableProcessors();
+    public int idBlockSize = 0;
+    public boolean trackChanges = false;
+    public int sessionSize = 10000;
+    public boolean schemaCache = true;
+    public boolean advisor = false;
+    public double advisorSampleRate = 0.1;
+    public long purgeIntervalMillis = 60000;
+    public int purgeBatchSize = 1000;
+    public long purgeTargetMillis = 50;
 
 
     public interface Driver {
@@ -39,6 +54,12 @@ public final class Config {
     }
 
 
+    public interface Routing {
+        String ROUND_ROBIN = "round-robin";
+        String LEAST_OUTSTANDING = "least-outstanding";
+    }
+
+
     private Config() { }
 
 
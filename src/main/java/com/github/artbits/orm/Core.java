@@ -16,86 +16,238 @@
 
 package com.github.artbits.orm;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiFunction;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
 
 final class Core implements DB {
 
+    private final static int BATCH_SIZE = 500;
+    private final static int LOAD_CHUNK_SIZE = 500;
+    private final static int PARTITION_ID_BLOCK_SIZE = 1000;
+
     private final Runner runner;
     private final Config config;
+    private final TableManager tableManager;
+    private final ChangeTracker tracker;
+    private final Purger purger;
+    private final Map<Class<?>, Sequence> sequences = new ConcurrentHashMap<>();
+    private final ThreadLocal<Session> session = new ThreadLocal<>();
+    private volatile ForkJoinPool pool;
 
 
     Core(Config config) {
+        this(config, true);
+    }
+
+
+    Core(Config config, boolean shutdownHook) {
         this.config = config;
         runner = new Runner(config);
-        Runtime.getRuntime().addShutdownHook(new Thread(this::close));
+        tableManager = new TableManager(runner, config);
+        tracker = config.trackChanges ? new ChangeTracker() : null;
+        purger = new Purger(runner, config, tClass -> tables(tClass, null));
+        if (shutdownHook) {
+            Runtime.getRuntime().addShutdownHook(new Thread(this::close));
+        }
     }
 
 
     @Override
     public void close() {
+        Optional.ofNullable(pool).ifPresent(ForkJoinPool::shutdown);
+        purger.close();
         runner.close();
     }
 
 
     @Override
     public void tables(Class<?>... classes) {
-        TableManager.init(runner, config, classes);
+        runner.onPrimary(() -> {
+            tableManager.init(classes);
+            return null;
+        });
+        for (Class<?> tClass : classes) {
+            purger.register(tClass);
+        }
     }
 
 
     @Override
     public void drop(Class<?>... classes) {
         for (Class<?> tClass : classes) {
-            runner.executeUpdate(SQLTemplate.drop(tClass));
+            if (Objects.equals(config.driver, Config.Driver.SQLITE) && !new Reflect<>(tClass).getFulltextColumns().isEmpty()) {
+                SQLTemplate.dropFulltext(tClass.getSimpleName().toLowerCase()).forEach(runner::executeUpdate);
+            }
+            if (Partitioner.of(tClass) != null) {
+                tableManager.partitions(tClass).forEach(table -> tableManager.dropPartition(tClass, table));
+            } else {
+                runner.executeUpdate(SQLTemplate.drop(tClass));
+            }
+            tableManager.forget(tClass);
+            purger.forget(tClass);
         }
     }
 
 
     @Override
     public <T> long insert(T t) {
-        String sql = SQLTemplate.insert(t);
-        return runner.insert(sql);
+        boolean sequenced = sequenced(t.getClass());
+        if (sequenced) {
+            new Reflect<>(t).setValue("id", null);
+            assign(t);
+        }
+        return insert(t, sequenced);
+    }
+
+
+    <T> long insert(T t, boolean presetId) {
+        List<Object> parameters = new ArrayList<>();
+        String sql = SQLTemplate.insert(t, table(t), presetId, parameters);
+        long id = runner.insert(sql, parameters.toArray());
+        return presetId ? ((Number) new Reflect<>(t).getValue("id")).longValue() : id;
+    }
+
+
+    @Override
+    public <T> int insertAll(List<T> list) {
+        if (list.isEmpty()) {
+            return 0;
+        }
+        list.forEach(this::assign);
+        Class<?> tClass = list.get(0).getClass();
+        return batch(route(list), table -> SQLTemplate.insertAll(tClass, table));
     }
 
 
     @Override
-    public <T> void update(T t, String predicate, Object... args) {
-        String sql = SQLTemplate.update(t, new Options().where(predicate, args));
-        runner.executeUpdate(sql, unused -> null);
+    public <T> int upsert(T t) {
+        return upsertAll(Collections.singletonList(t));
+    }
+
+
+    @Override
+    public <T> int upsertAll(List<T> list) {
+        if (list.isEmpty()) {
+            return 0;
+        }
+        list.forEach(this::assign);
+        Class<?> tClass = list.get(0).getClass();
+        evict(tClass);
+        return batch(route(list), table -> SQLTemplate.upsert(tClass, table, config));
+    }
+
+
+    private <T> int batch(Map<String, List<T>> routes, Function<String, String> template) {
+        return runner.executeTransaction(connection -> {
+            int rows = 0;
+            for (Map.Entry<String, List<T>> route : routes.entrySet()) {
+                List<T> part = route.getValue();
+                try (PreparedStatement statement = connection.prepareStatement(template.apply(route.getKey()))) {
+                    for (int i = 0; i < part.size(); i++) {
+                        Runner.bind(statement, SQLTemplate.parameters(part.get(i)));
+                        statement.addBatch();
+                        if ((i + 1) % BATCH_SIZE == 0 || i == part.size() - 1) {
+                            for (int count : statement.executeBatch()) {
+                                rows += (count == Statement.SUCCESS_NO_INFO) ? 1 : Math.max(0, count);
+                            }
+                        }
+                    }
+                }
+            }
+            return rows;
+        });
+    }
+
+
+    @Override
+    public <T> int update(T t, String predicate, Object... args) {
+        Set<String> columns = (tracker != null) ? tracker.changes(t) : null;
+        if (columns != null && columns.isEmpty()) {
+            return 0;
+        }
+        evict(t.getClass());
+        Options options = new Options().where(predicate, args);
+        int rows = 0;
+        for (String table : tables(t.getClass(), options.wherePredicate)) {
+            List<Object> parameters = new ArrayList<>();
+            String sql = SQLTemplate.update(t, table, options, columns, parameters);
+            rows += runner.executeUpdate(sql, parameters.toArray());
+        }
+        if (columns != null) {
+            tracker.track(t);
+        }
+        return rows;
     }
 
 
     @Override
-    public <T> void update(T t, long id) {
-        update(t, "id = ?", id);
+    public <T> int update(T t, long id) {
+        return update(t, "id = ?", id);
     }
 
 
     @Override
-    public <T> void delete(Class<T> tClass, String predicate, Object... args) {
-        String sql = SQLTemplate.delete(tClass, new Options().where(predicate, args));
-        runner.executeUpdate(sql, unused -> null);
+    public <T> long bulkUpdate(T t, Consumer<Bulk> consumer, String predicate, Object... args) {
+        Class<?> tClass = t.getClass();
+        evict(tClass);
+        List<Object> parameters = new ArrayList<>();
+        return chunked(tClass, consumer, new Options().where(predicate, args), (table, options) -> {
+            parameters.clear();
+            return SQLTemplate.update(t, table, options, null, parameters);
+        }, parameters);
     }
 
 
     @Override
-    public <T> void delete(Class<T> tClass, List<Long> ids) {
+    public <T> int delete(Class<T> tClass, String predicate, Object... args) {
+        evict(tClass);
+        Options options = new Options().where(predicate, args);
+        int rows = 0;
+        for (String table : tables(tClass, options.wherePredicate)) {
+            rows += runner.executeUpdate(SQLTemplate.delete(table, options));
+        }
+        return rows;
+    }
+
+
+    @Override
+    public <T> int delete(Class<T> tClass, List<Long> ids) {
         StringBuilder builder = new StringBuilder(String.valueOf(ids));
         builder.deleteCharAt(0).deleteCharAt(builder.length() - 1);
-        delete(tClass, "id in(?)", builder);
+        return delete(tClass, "id in(?)", builder);
     }
 
 
     @Override
-    public <T> void delete(Class<T> tClass, Long... ids) {
-        delete(tClass, Arrays.asList(ids));
+    public <T> int delete(Class<T> tClass, Long... ids) {
+        return delete(tClass, Arrays.asList(ids));
     }
 
 
     @Override
-    public <T> void deleteAll(Class<T> tClass) {
-        delete(tClass, null, (Object) null);
+    public <T> int deleteAll(Class<T> tClass) {
+        return delete(tClass, null, (Object) null);
+    }
+
+
+    @Override
+    public <T> long bulkDelete(Class<T> tClass, Consumer<Bulk> consumer, String predicate, Object... args) {
+        evict(tClass);
+        return chunked(tClass, consumer, new Options().where(predicate, args), SQLTemplate::delete, Collections.emptyList());
     }
 
 
@@ -103,8 +255,11 @@ final class Core implements DB {
     public <T> List<T> find(Class<T> tClass, Consumer<Options> consumer) {
         Options options = (consumer != null) ? new Options() : null;
         Optional.ofNullable(consumer).ifPresent(c -> c.accept(options));
-        String sql = SQLTemplate.query(tClass, options);
-        return runner.query(sql, tClass);
+        List<T> list = fetch(tClass, options);
+        if (options != null) {
+            Relations.include(list, options.includeRelations, (c, o) -> fetch(c, o));
+        }
+        return list;
     }
 
 
@@ -128,22 +283,137 @@ final class Core implements DB {
     }
 
 
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> void load(List<T> list, String... columns) {
+        if (list.isEmpty() || columns.length == 0) {
+            return;
+        }
+        Class<T> tClass = (Class<T>) list.get(0).getClass();
+        Reflect<T> reflect = new Reflect<>(tClass);
+        for (String column : columns) {
+            if (!reflect.hasField(column)) {
+                throw new IllegalArgumentException("No column named " + column);
+            }
+        }
+        Map<Long, List<T>> targets = new HashMap<>();
+        for (T t : list) {
+            Object id = new Reflect<>(t).getValue("id");
+            if (id != null) {
+                targets.computeIfAbsent(((Number) id).longValue(), k -> new ArrayList<>(1)).add(t);
+            }
+        }
+        List<Long> ids = new ArrayList<>(targets.keySet());
+        for (int i = 0; i < ids.size(); i += LOAD_CHUNK_SIZE) {
+            StringBuilder builder = new StringBuilder(String.valueOf(ids.subList(i, Math.min(ids.size(), i + LOAD_CHUNK_SIZE))));
+            builder.deleteCharAt(0).deleteCharAt(builder.length() - 1);
+            Options options = new Options().where("id in(?)", builder);
+            options.selectColumns = "id, " + String.join(", ", columns);
+            for (String table : tables(tClass, null)) {
+                for (T loaded : runner.query(SQLTemplate.query(tClass, table, options), tClass)) {
+                    Reflect<T> source = new Reflect<>(loaded);
+                    for (T t : targets.get(((Number) source.getValue("id")).longValue())) {
+                        Reflect<T> target = new Reflect<>(t);
+                        for (String column : columns) {
+                            target.setValue(column, source.getValue(column));
+                        }
+                        if (tracker != null) {
+                            tracker.track(t);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+
+    @Override
+    public <T> Query.Builder<T> query(Class<T> tClass) {
+        unpartitioned(tClass, "Precompiled queries");
+        return new Query.Builder<>(this, null, tClass);
+    }
+
+
+    @Override
+    public <Y> Y session(Function<DB, Y> function) {
+        begin();
+        try {
+            return function.apply(this);
+        } finally {
+            end();
+        }
+    }
+
+
+    @Override
+    public <T> List<T> search(Class<T> tClass, String query, Consumer<Options> consumer) {
+        return searchHits(tClass, query, consumer).stream().map(SearchHit::entity).collect(Collectors.toList());
+    }
+
+
+    @Override
+    public <T> List<SearchHit<T>> searchHits(Class<T> tClass, String query, Consumer<Options> consumer) {
+        Options options = (consumer != null) ? new Options() : null;
+        Optional.ofNullable(consumer).ifPresent(c -> c.accept(options));
+        return searchHits(tClass, query, options);
+    }
+
+
+    <T> List<SearchHit<T>> searchHits(Class<T> tClass, String query, Options options) {
+        String sql = SQLTemplate.search(tClass, query, options, config);
+        List<String> columns = new Reflect<>(tClass).getFulltextColumns();
+        return runner.executeQuery(sql, set -> {
+            List<SearchHit<T>> list = new ArrayList<>();
+            while (set.next()) {
+                T t = attach(Reflect.toEntity(tClass, set));
+                String snippet = set.getString("orm_snippet");
+                list.add(new SearchHit<>(t, set.getDouble("orm_score"), (snippet != null) ? snippet : SearchHit.snippet(t, columns, query)));
+            }
+            return list;
+        });
+    }
+
+
+    @Override
+    public <T> List<T> findParallel(Class<T> tClass, Consumer<Options> consumer) {
+        unpartitioned(tClass, "Parallel scans");
+        List<Options> ranges = ranges(tClass, consumer);
+        return pool().submit(() -> ranges.parallelStream()
+                .map(options -> load(SQLTemplate.query(tClass, options), tClass, options.selectColumns != null))
+                .flatMap(List::stream)
+                .collect(Collectors.toList())).join();
+    }
+
+
+    @Override
+    public <T> Stream<T> streamParallel(Class<T> tClass, Consumer<Options> consumer) {
+        unpartitioned(tClass, "Parallel scans");
+        return ranges(tClass, consumer).parallelStream()
+                .flatMap(options -> load(SQLTemplate.query(tClass, options), tClass, options.selectColumns != null).stream());
+    }
+
+
     @Override
     public <T> T findOne(Class<T> tClass, String predicate, Object... args) {
-        List<T> list = find(tClass, options -> options.where(predicate, args));
+        List<T> list = find(tClass, options -> options.where(predicate, args).limit(1));
         return (!list.isEmpty()) ? list.get(0) : null;
     }
 
 
     @Override
     public <T> T findOne(Class<T> tClass, Long id) {
+        Session current = session.get();
+        T cached = (current != null && id != null) ? current.get(tClass, id) : null;
+        if (cached != null) {
+            return cached;
+        }
         return findOne(tClass, "id = ?", id);
     }
 
 
     @Override
     public <T> T first(Class<T> tClass, String predicate, Object... args) {
-        List<T> list = find(tClass, options -> options.where(predicate, args).order("id", Options.ASC));
+        List<T> list = find(tClass, options -> options.where(predicate, args).order("id", Options.ASC).limit(1));
         return (!list.isEmpty()) ? list.get(0) : null;
     }
 
@@ -156,7 +426,7 @@ final class Core implements DB {
 
     @Override
     public <T> T last(Class<T> tClass, String predicate, Object... args) {
-        List<T> list = find(tClass, options -> options.where(predicate, args).order("id", Options.DESC));
+        List<T> list = find(tClass, options -> options.where(predicate, args).order("id", Options.DESC).limit(1));
         return (!list.isEmpty()) ? list.get(0) : null;
     }
 
@@ -167,10 +437,32 @@ final class Core implements DB {
     }
 
 
+    @Override
+    public <T> boolean exists(Class<T> tClass, String predicate, Object... args) {
+        Options options = new Options().select("1").where(predicate, args).limit(1);
+        for (String table : tables(tClass, options.wherePredicate)) {
+            if (runner.executeQuery(SQLTemplate.query(tClass, table, options), ResultSet::next)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    @Override
+    public <T> boolean exists(Class<T> tClass) {
+        return exists(tClass, null, (Object) null);
+    }
+
+
     @Override
     public <T> long count(Class<T> tClass, String predicate, Object... args) {
-        String s = SQLTemplate.query(tClass, new Options().select("count(*)").where(predicate, args));
-        return runner.executeQuery(s, set -> set.next() ? set.getLong(1) : 0);
+        Options options = new Options().select("count(*)").where(predicate, args);
+        long count = 0;
+        for (String table : tables(tClass, options.wherePredicate)) {
+            count += runner.executeQuery(SQLTemplate.query(tClass, table, options), set -> set.next() ? set.getLong(1) : 0L);
+        }
+        return count;
     }
 
 
@@ -182,6 +474,9 @@ final class Core implements DB {
 
     @Override
     public <T> double average(Class<T> tClass, String column, String predicate, Object... args) {
+        if (Partitioner.of(tClass) != null) {
+            return aggregate(tClass, a -> a.average(column).where(predicate, args)).average(column);
+        }
         String s = SQLTemplate.query(tClass, new Options().select(String.format("avg(%s)", column)).where(predicate, args));
         return runner.executeQuery(s, set -> set.next() ? set.getDouble(1) : 0);
     }
@@ -195,8 +490,7 @@ final class Core implements DB {
 
     @Override
     public <T> Number sum(Class<T> tClass, String column, String predicate, Object... args) {
-        String s = SQLTemplate.query(tClass, new Options().select(String.format("sum(%s)", column)).where(predicate, args));
-        return runner.executeQuery(s, set -> set.next() ? (Number) set.getObject(1) : 0);
+        return aggregate(tClass, a -> a.sum(column).where(predicate, args)).sum(column);
     }
 
 
@@ -208,8 +502,7 @@ final class Core implements DB {
 
     @Override
     public <T> Number max(Class<T> tClass, String column, String predicate, Object... args) {
-        String s = SQLTemplate.query(tClass, new Options().select(String.format("max(%s)", column)).where(predicate, args));
-        return runner.executeQuery(s, set -> set.next() ? (Number) set.getObject(1) : 0);
+        return aggregate(tClass, a -> a.max(column).where(predicate, args)).max(column);
     }
 
 
@@ -221,8 +514,7 @@ final class Core implements DB {
 
     @Override
     public <T> Number min(Class<T> tClass, String column, String predicate, Object... args) {
-        String s = SQLTemplate.query(tClass, new Options().select(String.format("min(%s)", column)).where(predicate, args));
-        return runner.executeQuery(s, set -> set.next() ? (Number) set.getObject(1) : 0);
+        return aggregate(tClass, a -> a.min(column).where(predicate, args)).min(column);
     }
 
 
@@ -231,4 +523,410 @@ final class Core implements DB {
         return min(tClass, column, null, (Object) null);
     }
 
+
+    @Override
+    public <T> long export(Class<T> tClass, Consumer<Options> consumer, OutputStream stream, Format format) {
+        return export(tClass, consumer, stream, format, false);
+    }
+
+
+    @Override
+    public <T> long export(Class<T> tClass, Consumer<Options> consumer, OutputStream stream, Format format, boolean gzip) {
+        Options options = (consumer != null) ? new Options() : null;
+        Optional.ofNullable(consumer).ifPresent(c -> c.accept(options));
+        return export(tClass, options, stream, format, gzip, true);
+    }
+
+
+    <T> long export(Class<T> tClass, Options options, OutputStream stream, Format format, boolean gzip, boolean header) {
+        if (Partitioner.of(tClass) == null) {
+            String sql = SQLTemplate.queryAll(tClass, options);
+            return runner.executeStreamQuery(sql, set -> Exporter.export(tClass, set, stream, format, gzip, header));
+        }
+        if (options != null && (options.groupColumns != null || options.orderColumns != null || options.limitSize != null || options.offsetSize != null)) {
+            throw new IllegalArgumentException("Partitioned exports only support select and where options");
+        }
+        try {
+            long rows = 0;
+            try (GZIPOutputStream gzipStream = gzip ? new Exporter.Gzip(stream) : null) {
+                OutputStream out = (gzipStream != null) ? gzipStream : stream;
+                List<String> tables = tables(tClass, (options != null) ? options.wherePredicate : null);
+                for (int i = 0; i < tables.size(); i++) {
+                    boolean first = header && i == 0;
+                    String sql = SQLTemplate.query(tables.get(i), options);
+                    rows += runner.executeStreamQuery(sql, set -> Exporter.export(tClass, set, out, format, false, first));
+                }
+            }
+            stream.flush();
+            return rows;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+
+    @Override
+    public <T> ImportReport importFile(Class<T> tClass, Path path, Format format, ImportOptions options) {
+        unpartitioned(tClass, "Imports");
+        LongSupplier ids = sequenced(tClass) ? () -> sequence(tClass).next() : null;
+        return Importer.run(runner, config, tClass, tableManager.columns(tClass), ids, path, format, (options != null) ? options : ImportOptions.of(o -> {}));
+    }
+
+
+    @Override
+    public <T> Plan explain(Class<T> tClass, Consumer<Options> consumer) {
+        Options options = (consumer != null) ? new Options() : null;
+        Optional.ofNullable(consumer).ifPresent(c -> c.accept(options));
+        unpartitioned(tClass, "Plans");
+        return runner.explain(SQLTemplate.query(tClass, options));
+    }
+
+
+    @Override
+    public Advisor advisor() {
+        return runner.advisor;
+    }
+
+
+    @Override
+    public <T> Statistics aggregate(Class<T> tClass, Consumer<Aggregate> consumer) {
+        Aggregate aggregate = new Aggregate();
+        consumer.accept(aggregate);
+        if (Partitioner.of(tClass) != null) {
+            aggregate.mergeable();
+        }
+        Options options = aggregate.toOptions();
+        boolean[] types = Statistics.types(tClass, aggregate.functions);
+        List<Statistics> parts = new ArrayList<>();
+        for (String table : tables(tClass, options.wherePredicate)) {
+            parts.add(runner.executeQuery(SQLTemplate.query(tClass, table, options), set -> {
+                set.next();
+                return new Statistics(aggregate.functions, types, set);
+            }));
+        }
+        if (parts.isEmpty()) {
+            return new Statistics(aggregate.functions, types, new long[types.length], new double[types.length]);
+        }
+        return (parts.size() == 1) ? parts.get(0) : Statistics.merge(parts);
+    }
+
+
+    @Override
+    public <T> Map<Object, Statistics> aggregateGroup(Class<T> tClass, Consumer<Aggregate> consumer) {
+        Aggregate aggregate = new Aggregate();
+        consumer.accept(aggregate);
+        String[] groupColumns = aggregate.groupColumns();
+        if (groupColumns.length == 0) {
+            throw new IllegalArgumentException("No group columns specified");
+        }
+        boolean partitioned = Partitioner.of(tClass) != null;
+        if (partitioned) {
+            aggregate.mergeable();
+        }
+        Options options = aggregate.toOptions();
+        boolean[] types = Statistics.types(tClass, aggregate.functions);
+        Map<Object, List<Statistics>> groups = new LinkedHashMap<>();
+        for (String table : tables(tClass, options.wherePredicate)) {
+            runner.executeQuery(SQLTemplate.query(tClass, table, options), set -> {
+                int offset = types.length + 1;
+                while (set.next()) {
+                    Object key;
+                    if (groupColumns.length == 1) {
+                        key = set.getObject(offset);
+                    } else {
+                        List<Object> keys = new ArrayList<>(groupColumns.length);
+                        for (int i = 0; i < groupColumns.length; i++) {
+                            keys.add(set.getObject(offset + i));
+                        }
+                        key = keys;
+                    }
+                    groups.computeIfAbsent(key, k -> new ArrayList<>()).add(new Statistics(aggregate.functions, types, set));
+                }
+                return null;
+            });
+        }
+        Map<Object, Statistics> map = new LinkedHashMap<>();
+        groups.forEach((key, parts) -> map.put(key, (parts.size() == 1) ? parts.get(0) : Statistics.merge(parts)));
+        return map;
+    }
+
+
+    @Override
+    public <T> List<String> partitions(Class<T> tClass) {
+        return (Partitioner.of(tClass) != null) ? tableManager.partitions(tClass) : Collections.emptyList();
+    }
+
+
+    @Override
+    public <T> int dropPartitions(Class<T> tClass, long before) {
+        Partitioner partitioner = Partitioner.of(tClass);
+        if (partitioner == null) {
+            throw new IllegalArgumentException(tClass.getSimpleName() + " is not partitioned");
+        }
+        evict(tClass);
+        int dropped = 0;
+        for (String table : tableManager.partitions(tClass)) {
+            if (partitioner.range(table)[1] <= before) {
+                tableManager.dropPartition(tClass, table);
+                dropped++;
+            }
+        }
+        return dropped;
+    }
+
+
+    @Override
+    public <T> long purge(Class<T> tClass) {
+        evict(tClass);
+        return purger.purge(tClass);
+    }
+
+
+    @Override
+    public PurgeStats purgeStats() {
+        return purger.stats();
+    }
+
+
+    Runner runner() {
+        return runner;
+    }
+
+
+    Config config() {
+        return config;
+    }
+
+
+    Map<String, String> columns(Class<?> tClass) {
+        return tableManager.columns(tClass);
+    }
+
+
+    <T> void assign(T t) {
+        if (!sequenced(t.getClass())) {
+            return;
+        }
+        Reflect<T> reflect = new Reflect<>(t);
+        if (reflect.getValue("id") == null) {
+            reflect.setValue("id", sequence(t.getClass()).next());
+        }
+    }
+
+
+    private Sequence sequence(Class<?> tClass) {
+        int blockSize = (config.idBlockSize > 0) ? config.idBlockSize : PARTITION_ID_BLOCK_SIZE;
+        return sequences.computeIfAbsent(tClass, c -> new Sequence(runner, config,
+                c.getSimpleName().toLowerCase(), blockSize, () -> seed(c)));
+    }
+
+
+    boolean sequenced(Class<?> tClass) {
+        return config.idBlockSize > 0 || Partitioner.of(tClass) != null;
+    }
+
+
+    long seed(Class<?> tClass) {
+        return runner.onPrimary(() -> max(tClass, "id").longValue()) + 1;
+    }
+
+
+    <T> List<T> fetch(Class<T> tClass, Options options) {
+        boolean partial = options != null && options.selectColumns != null;
+        if (Partitioner.of(tClass) == null) {
+            return load(SQLTemplate.query(tClass, options), tClass, partial);
+        }
+        if (options != null && options.groupColumns != null) {
+            throw new IllegalArgumentException("Grouped finds are not supported across partitions, use aggregateGroup");
+        }
+        Options part = Merger.scatter(options);
+        List<List<T>> parts = new ArrayList<>();
+        for (String table : tables(tClass, (options != null) ? options.wherePredicate : null)) {
+            parts.add(load(SQLTemplate.query(tClass, table, part), tClass, partial));
+        }
+        return Merger.merge(parts, options);
+    }
+
+
+    <T> T attach(T t) {
+        return attach(t, false);
+    }
+
+
+    <T> T attach(T t, boolean partial) {
+        Session current = session.get();
+        if (current != null && !partial) {
+            T existing = current.attach(t);
+            if (existing != t) {
+                return existing;
+            }
+        }
+        if (tracker != null) {
+            tracker.track(t);
+        }
+        return t;
+    }
+
+
+    void begin() {
+        Session current = session.get();
+        if (current == null) {
+            current = new Session(config.sessionSize);
+            session.set(current);
+        }
+        current.depth++;
+    }
+
+
+    void end() {
+        Session current = session.get();
+        if (current != null && --current.depth == 0) {
+            session.remove();
+        }
+    }
+
+
+    private <T> String table(T t) {
+        Class<?> tClass = t.getClass();
+        Partitioner partitioner = Partitioner.of(tClass);
+        if (partitioner == null) {
+            return tClass.getSimpleName().toLowerCase();
+        }
+        return tableManager.partition(tClass, partitioner.table(new Reflect<>(t).getValue(partitioner.column)));
+    }
+
+
+    private <T> Map<String, List<T>> route(List<T> list) {
+        if (Partitioner.of(list.get(0).getClass()) == null) {
+            return Collections.singletonMap(list.get(0).getClass().getSimpleName().toLowerCase(), list);
+        }
+        Map<String, List<T>> routes = new TreeMap<>();
+        list.forEach(t -> routes.computeIfAbsent(table(t), k -> new ArrayList<>()).add(t));
+        return routes;
+    }
+
+
+    private List<String> tables(Class<?> tClass, String predicate) {
+        Partitioner partitioner = Partitioner.of(tClass);
+        if (partitioner == null) {
+            return Collections.singletonList(tClass.getSimpleName().toLowerCase());
+        }
+        long[] bounds = partitioner.bounds(predicate);
+        return tableManager.partitions(tClass).stream().filter(table -> partitioner.matches(table, bounds)).collect(Collectors.toList());
+    }
+
+
+    private static void unpartitioned(Class<?> tClass, String operation) {
+        if (Partitioner.of(tClass) != null) {
+            throw new UnsupportedOperationException(operation + " are not supported for partitioned class " + tClass.getSimpleName());
+        }
+    }
+
+
+    private void evict(Class<?> tClass) {
+        Optional.ofNullable(session.get()).ifPresent(current -> current.evict(tClass));
+    }
+
+
+    private <T> List<T> load(String sql, Class<T> tClass, boolean partial) {
+        List<T> list = runner.query(sql, tClass);
+        list.replaceAll(t -> attach(t, partial));
+        return list;
+    }
+
+
+    private <T> List<Options> ranges(Class<T> tClass, Consumer<Options> consumer) {
+        Options options = new Options();
+        Optional.ofNullable(consumer).ifPresent(c -> c.accept(options));
+        if (options.groupColumns != null || options.orderColumns != null || options.limitSize != null || options.offsetSize != null) {
+            throw new IllegalArgumentException("Parallel scans only support select and where options");
+        }
+        List<Options> ranges = new ArrayList<>();
+        long[] span = idSpan(tClass, tClass.getSimpleName().toLowerCase(), options.wherePredicate);
+        if (span == null) {
+            return ranges;
+        }
+        long partitions = Math.max(1, config.parallelism) * 4L;
+        long step = Math.max(1, (span[1] - span[0]) / partitions + 1);
+        for (long low = span[0]; low <= span[1]; low += step) {
+            Options range = new Options();
+            range.selectColumns = options.selectColumns;
+            range.wherePredicate = idRange(options.wherePredicate, low, low + step);
+            range.orderColumns = "id asc";
+            ranges.add(range);
+        }
+        return ranges;
+    }
+
+
+    private <T> long[] idSpan(Class<T> tClass, String table, String predicate) {
+        Options options = new Options().select("count(*)", "min(id)", "max(id)");
+        options.wherePredicate = predicate;
+        return runner.executeQuery(SQLTemplate.query(tClass, table, options),
+                set -> (set.next() && set.getLong(1) > 0) ? new long[]{set.getLong(2), set.getLong(3)} : null);
+    }
+
+
+    private static String idRange(String predicate, long low, long high) {
+        String range = String.format("id >= %d and id < %d", low, high);
+        return (predicate != null) ? String.format("(%s) and %s", predicate, range) : range;
+    }
+
+
+    private <T> long chunked(Class<T> tClass, Consumer<Bulk> consumer, Options options, BiFunction<String, Options, String> template,
+                             List<Object> parameters) {
+        Bulk bulk = new Bulk();
+        Optional.ofNullable(consumer).ifPresent(c -> c.accept(bulk));
+        Map<String, long[]> spans = runner.onPrimary(() -> {
+            Map<String, long[]> map = new LinkedHashMap<>();
+            for (String table : tables(tClass, options.wherePredicate)) {
+                Optional.ofNullable(idSpan(tClass, table, options.wherePredicate)).ifPresent(span -> map.put(table, span));
+            }
+            return map;
+        });
+        long size = spans.values().stream().mapToLong(span -> span[1] - span[0] + 1).sum();
+        long total = 0;
+        long done = 0;
+        long start = System.nanoTime();
+        for (Map.Entry<String, long[]> entry : spans.entrySet()) {
+            long[] span = entry.getValue();
+            for (long low = span[0]; low <= span[1]; low += bulk.chunkSize) {
+                Options chunk = new Options();
+                chunk.wherePredicate = idRange(options.wherePredicate, low, low + bulk.chunkSize);
+                String sql = template.apply(entry.getKey(), chunk);
+                total += runner.executeUpdate(sql, parameters.toArray());
+                done += Math.min(bulk.chunkSize, span[1] - low + 1);
+                if (bulk.listener != null) {
+                    bulk.listener.accept(total, Math.min(1.0, (double) done / size));
+                }
+                long delay = bulk.pauseMillis;
+                if (bulk.rowsPerSecond > 0) {
+                    long elapsed = (System.nanoTime() - start) / 1_000_000;
+                    delay = Math.max(delay, (long) (total * 1000 / bulk.rowsPerSecond) - elapsed);
+                }
+                if (delay > 0 && done < size) {
+                    try {
+                        Thread.sleep(delay);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new RuntimeException(e);
+                    }
+                }
+            }
+        }
+        return total;
+    }
+
+
+    private ForkJoinPool pool() {
+        if (pool == null) {
+            synchronized (this) {
+                if (pool == null) {
+                    pool = new ForkJoinPool(Math.max(1, config.parallelism));
+                }
+            }
+        }
+        return pool;
+    }
+
 }
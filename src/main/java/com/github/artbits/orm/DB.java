@@ -16,8 +16,13 @@
 
 package com.github.artbits.orm;
 
+import java.io.OutputStream;
+import java.nio.file.Path;
 import java.util.List;
+import java.util.Map;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 public interface DB extends AutoCloseable {
 
@@ -26,22 +31,36 @@ public interface DB extends AutoCloseable {
     void tables(Class<?>... classes);
     void drop(Class<?>... classes);
     <T> long insert(T t);
-    <T> void update(T t, String predicate, Object... args);
-    <T> void update(T t, long id);
-    <T> void delete(Class<T> tClass, String predicate, Object... args);
-    <T> void delete(Class<T> tClass, List<Long> ids);
-    <T> void delete(Class<T> tClass, Long... ids);
-    <T> void deleteAll(Class<T> tClass);
+    <T> int insertAll(List<T> list);
+    <T> int upsert(T t);
+    <T> int upsertAll(List<T> list);
+    <T> int update(T t, String predicate, Object... args);
+    <T> int update(T t, long id);
+    <T> long bulkUpdate(T t, Consumer<Bulk> consumer, String predicate, Object... args);
+    <T> int delete(Class<T> tClass, String predicate, Object... args);
+    <T> int delete(Class<T> tClass, List<Long> ids);
+    <T> int delete(Class<T> tClass, Long... ids);
+    <T> int deleteAll(Class<T> tClass);
+    <T> long bulkDelete(Class<T> tClass, Consumer<Bulk> consumer, String predicate, Object... args);
     <T> List<T> find(Class<T> tClass, Consumer<Options> consumer);
     <T> List<T> find(Class<T> tClass, List<Long> ids);
     <T> List<T> find(Class<T> tClass, Long... ids);
     <T> List<T> findAll(Class<T> tClass);
+    <T> void load(List<T> list, String... columns);
+    <T> Query.Builder<T> query(Class<T> tClass);
+    <Y> Y session(Function<DB, Y> function);
+    <T> List<T> search(Class<T> tClass, String query, Consumer<Options> consumer);
+    <T> List<SearchHit<T>> searchHits(Class<T> tClass, String query, Consumer<Options> consumer);
+    <T> List<T> findParallel(Class<T> tClass, Consumer<Options> consumer);
+    <T> Stream<T> streamParallel(Class<T> tClass, Consumer<Options> consumer);
     <T> T findOne(Class<T> tClass, String predicate, Object... args);
     <T> T findOne(Class<T> tClass, Long id);
     <T> T first(Class<T> tClass, String predicate, Object... args);
     <T> T first(Class<T> tClass);
     <T> T last(Class<T> tClass, String predicate, Object... args);
     <T> T last(Class<T> tClass);
+    <T> boolean exists(Class<T> tClass, String predicate, Object... args);
+    <T> boolean exists(Class<T> tClass);
     <T> long count(Class<T> tClass, String predicate, Object... args);
     <T> long count(Class<T> tClass);
     <T> double average(Class<T> tClass, String column, String predicate, Object... args);
@@ -52,6 +71,17 @@ public interface DB extends AutoCloseable {
     <T> Number max(Class<T> tClass, String column);
     <T> Number min(Class<T> tClass, String column, String predicate, Object... args);
     <T> Number min(Class<T> tClass, String column);
+    <T> long export(Class<T> tClass, Consumer<Options> consumer, OutputStream stream, Format format);
+    <T> long export(Class<T> tClass, Consumer<Options> consumer, OutputStream stream, Format format, boolean gzip);
+    <T> ImportReport importFile(Class<T> tClass, Path path, Format format, ImportOptions options);
+    <T> Plan explain(Class<T> tClass, Consumer<Options> consumer);
+    Advisor advisor();
+    <T> Statistics aggregate(Class<T> tClass, Consumer<Aggregate> consumer);
+    <T> Map<Object, Statistics> aggregateGroup(Class<T> tClass, Consumer<Aggregate> consumer);
+    <T> List<String> partitions(Class<T> tClass);
+    <T> int dropPartitions(Class<T> tClass, long before);
+    <T> long purge(Class<T> tClass);
+    PurgeStats purgeStats();
 
 
     static DB connect(Config config) {
@@ -59,8 +89,23 @@ public interface DB extends AutoCloseable {
     }
 
 
+    static DB shard(Config... configs) {
+        return new ShardedCore(configs);
+    }
+
+
+    static Tenants tenants(TenantConfig config) {
+        return new Tenants(config);
+    }
+
+
     static <T> void print(T t) {
         System.out.println(new JsonObject(t));
     }
 
+
+    static <T> void print(T t, Appendable appendable) {
+        JsonObject.write(t, appendable);
+    }
+
 }
@@ -0,0 +1,127 @@
+/**
+ * Copyright 2023 Zhang Guanhu
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.artbits.orm;
+
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+public final class DeflateCodec implements Codec {
+
+    private final static int POOL_SIZE = Runtime.getRuntime().availableProcessors() * 2;
+
+    private final BlockingQueue<Deflating> deflaters = new ArrayBlockingQueue<>(POOL_SIZE);
+    private final BlockingQueue<Inflating> inflaters = new ArrayBlockingQueue<>(POOL_SIZE);
+
+
+    @Override
+    public byte[] encode(byte[] data) {
+        Deflating deflating = deflaters.poll();
+        deflating = (deflating != null) ? deflating : new Deflating();
+        Deflater deflater = deflating.deflater;
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            byte[] buffer = deflating.buffer(data.length / 2 + 64);
+            int size = 0;
+            while (!deflater.finished()) {
+                if (size == buffer.length) {
+                    buffer = deflating.grow();
+                }
+                size += deflater.deflate(buffer, size, buffer.length - size);
+            }
+            return Arrays.copyOf(buffer, size);
+        } finally {
+            deflater.reset();
+            if (!deflaters.offer(deflating)) {
+                deflater.end();
+            }
+        }
+    }
+
+
+    @Override
+    public byte[] decode(byte[] data) {
+        Inflating inflating = inflaters.poll();
+        inflating = (inflating != null) ? inflating : new Inflating();
+        Inflater inflater = inflating.inflater;
+        try {
+            inflater.setInput(data);
+            byte[] buffer = inflating.buffer(data.length * 4);
+            int size = 0;
+            while (!inflater.finished()) {
+                if (size == buffer.length) {
+                    buffer = inflating.grow();
+                }
+                int count = inflater.inflate(buffer, size, buffer.length - size);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                size += count;
+            }
+            return Arrays.copyOf(buffer, size);
+        } catch (DataFormatException e) {
+            throw new RuntimeException(e);
+        } finally {
+            inflater.reset();
+            if (!inflaters.offer(inflating)) {
+                inflater.end();
+            }
+        }
+    }
+
+
+    private static class Buffered {
+
+        private final static int MAX_RETAINED = 1 << 20;
+
+        private byte[] buffer = new byte[8192];
+
+
+        byte[] buffer(int size) {
+            if (buffer.length < size || buffer.length > MAX_RETAINED) {
+                buffer = new byte[Math.max(8192, size)];
+            }
+            return buffer;
+        }
+
+
+        byte[] grow() {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            return buffer;
+        }
+
+    }
+
+
+    private static final class Deflating extends Buffered {
+
+        final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+
+    }
+
+
+    private static final class Inflating extends Buffered {
+
+        final Inflater inflater = new Inflater(true);
+
+    }
+
+}
@@ -0,0 +1,264 @@
+/**
+ * Copyright 2023 Zhang Guanhu
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.artbits.orm;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.zip.GZIPOutputStream;
+
+final class Exporter {
+
+    private final static int LONG = 0;
+    private final static int DOUBLE = 1;
+    private final static int BOOLEAN = 2;
+    private final static int TEXT = 3;
+    private final static int COMPRESSED = 4;
+
+    private final Writer writer;
+    private final Format format;
+    private final char[] digits = new char[20];
+    private int[] kinds;
+    private Field[] fields;
+    private char[][] names;
+
+
+    private Exporter(Writer writer, Format format) {
+        this.writer = writer;
+        this.format = format;
+    }
+
+
+    static long export(Class<?> tClass, ResultSet set, OutputStream stream, Format format, boolean gzip) throws IOException, SQLException {
+        return export(tClass, set, stream, format, gzip, true);
+    }
+
+
+    static long export(Class<?> tClass, ResultSet set, OutputStream stream, Format format, boolean gzip, boolean header) throws IOException, SQLException {
+        long rows = 0;
+        try (GZIPOutputStream gzipStream = gzip ? new Gzip(stream) : null) {
+            Writer writer = new BufferedWriter(new OutputStreamWriter((gzipStream != null) ? gzipStream : stream, StandardCharsets.UTF_8), 1 << 16);
+            Exporter exporter = new Exporter(writer, format);
+            exporter.header(tClass, set.getMetaData(), header);
+            while (set.next()) {
+                exporter.row(set);
+                rows++;
+            }
+            writer.flush();
+        }
+        stream.flush();
+        return rows;
+    }
+
+
+    private void header(Class<?> tClass, ResultSetMetaData metaData, boolean header) throws IOException, SQLException {
+        Reflect<?> reflect = new Reflect<>(tClass);
+        int count = metaData.getColumnCount();
+        kinds = new int[count];
+        fields = new Field[count];
+        names = new char[count][];
+        for (int i = 0; i < count; i++) {
+            String label = metaData.getColumnLabel(i + 1);
+            kinds[i] = reflect.hasField(label) ? kind(reflect.getDatabaseType(label)) : kind(metaData.getColumnType(i + 1));
+            if (reflect.isCompressed(label)) {
+                kinds[i] = COMPRESSED;
+                fields[i] = reflect.getField(label);
+            }
+            if (format == Format.CSV) {
+                names[i] = label.toCharArray();
+            } else {
+                StringBuilder builder = new StringBuilder();
+                builder.append((i == 0) ? "{" : ",");
+                JsonObject.escape(builder, label);
+                names[i] = builder.append(":").toString().toCharArray();
+            }
+        }
+        if (format == Format.CSV && header) {
+            for (int i = 0; i < count; i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                writeCsv(new String(names[i]));
+            }
+            writer.write('\n');
+        }
+    }
+
+
+    private void row(ResultSet set) throws IOException, SQLException {
+        boolean csv = format == Format.CSV;
+        for (int i = 0; i < kinds.length; i++) {
+            if (csv) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+            } else {
+                writer.write(names[i]);
+            }
+            int column = i + 1;
+            switch (kinds[i]) {
+                case LONG: {
+                    long value = set.getLong(column);
+                    if (set.wasNull()) {
+                        writeNull(csv);
+                    } else {
+                        writeLong(value);
+                    }
+                    break;
+                }
+                case DOUBLE: {
+                    double value = set.getDouble(column);
+                    if (set.wasNull() || (!csv && !Double.isFinite(value))) {
+                        writeNull(csv);
+                    } else {
+                        writer.write(Double.toString(value));
+                    }
+                    break;
+                }
+                case BOOLEAN: {
+                    boolean value = set.getBoolean(column);
+                    if (set.wasNull()) {
+                        writeNull(csv);
+                    } else {
+                        writer.write(value ? "true" : "false");
+                    }
+                    break;
+                }
+                default: {
+                    String value = (kinds[i] == COMPRESSED) ? Compression.decode(fields[i], set.getBytes(column)) : set.getString(column);
+                    if (value == null) {
+                        writeNull(csv);
+                    } else if (csv) {
+                        writeCsv(value);
+                    } else {
+                        JsonObject.escape(writer, value);
+                    }
+                    break;
+                }
+            }
+        }
+        if (!csv) {
+            writer.write((kinds.length == 0) ? "{}" : "}");
+        }
+        writer.write('\n');
+    }
+
+
+    private void writeNull(boolean csv) throws IOException {
+        if (!csv) {
+            writer.write("null");
+        }
+    }
+
+
+    private void writeLong(long value) throws IOException {
+        if (value == Long.MIN_VALUE) {
+            writer.write(Long.toString(value));
+            return;
+        }
+        int position = digits.length;
+        boolean negative = value < 0;
+        long rest = negative ? -value : value;
+        do {
+            digits[--position] = (char) ('0' + (rest % 10));
+            rest /= 10;
+        } while (rest != 0);
+        if (negative) {
+            digits[--position] = '-';
+        }
+        writer.write(digits, position, digits.length - position);
+    }
+
+
+    private void writeCsv(String value) throws IOException {
+        boolean quote = false;
+        for (int i = 0, n = value.length(); i < n && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        int start = 0;
+        for (int i = 0, n = value.length(); i < n; i++) {
+            if (value.charAt(i) == '"') {
+                writer.write(value, start, i + 1 - start);
+                writer.write('"');
+                start = i + 1;
+            }
+        }
+        writer.write(value, start, value.length() - start);
+        writer.write('"');
+    }
+
+
+    private static int kind(String databaseType) {
+        switch (databaseType) {
+            case "integer": return LONG;
+            case "real": return DOUBLE;
+            case "blob": return BOOLEAN;
+            default: return TEXT;
+        }
+    }
+
+
+    private static int kind(int sqlType) {
+        switch (sqlType) {
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+            case Types.BIGINT: return LONG;
+            case Types.FLOAT:
+            case Types.REAL:
+            case Types.DOUBLE:
+            case Types.NUMERIC:
+            case Types.DECIMAL: return DOUBLE;
+            case Types.BOOLEAN:
+            case Types.BIT: return BOOLEAN;
+            default: return TEXT;
+        }
+    }
+
+
+    static final class Gzip extends GZIPOutputStream {
+
+        Gzip(OutputStream stream) throws IOException {
+            super(stream, 1 << 16);
+        }
+
+
+        @Override
+        public void close() throws IOException {
+            try {
+                finish();
+            } finally {
+                def.end();
+            }
+        }
+    }
+
+}
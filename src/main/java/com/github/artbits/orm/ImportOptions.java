@@ -0,0 +1,39 @@
+/**
+ * Copyright 2023 Zhang Guanhu
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.artbits.orm;
+
+import java.util.function.Consumer;
+
+public final class ImportOptions {
+    public int batchSize = 1000;
+    public int transactionSize = 100000;
+    public int bufferSize = 1 << 20;
+    public int queueSize = 16;
+    public boolean dropIndexes = false;
+    public boolean bulkPragmas = true;
+    public Boolean gzip;
+
+
+    private ImportOptions() { }
+
+
+    public static ImportOptions of(Consumer<ImportOptions> consumer) {
+        ImportOptions options = new ImportOptions();
+        consumer.accept(options);
+        return options;
+    }
+}
@@ -0,0 +1,73 @@
+/**
+ * Copyright 2023 Zhang Guanhu
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.artbits.orm;
+
+public final class ImportReport {
+
+    private final long rows;
+    private final long parseMillis;
+    private final long insertMillis;
+    private final long indexMillis;
+    private final long totalMillis;
+
+
+    ImportReport(long rows, long parseMillis, long insertMillis, long indexMillis, long totalMillis) {
+        this.rows = rows;
+        this.parseMillis = parseMillis;
+        this.insertMillis = insertMillis;
+        this.indexMillis = indexMillis;
+        this.totalMillis = totalMillis;
+    }
+
+
+    public long rows() {
+        return rows;
+    }
+
+
+    public long parseMillis() {
+        return parseMillis;
+    }
+
+
+    public long insertMillis() {
+        return insertMillis;
+    }
+
+
+    public long indexMillis() {
+        return indexMillis;
+    }
+
+
+    public long totalMillis() {
+        return totalMillis;
+    }
+
+
+    public double rowsPerSecond() {
+        return (totalMillis > 0) ? rows * 1000.0 / totalMillis : rows;
+    }
+
+
+    @Override
+    public String toString() {
+        return String.format("{\"rows\":%d,\"rowsPerSecond\":%.1f,\"parseMillis\":%d,\"insertMillis\":%d,\"indexMillis\":%d,\"totalMillis\":%d}",
+                rows, rowsPerSecond(), parseMillis, insertMillis, indexMillis, totalMillis);
+    }
+
+}
@@ -0,0 +1,600 @@
+/**
+ * Copyright 2023 Zhang Guanhu
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.artbits.orm;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.reflect.Field;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.ToIntFunction;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+
+final class Importer {
+
+    private final static List<Object[]> END = new ArrayList<>();
+
+    private final List<Runner> runners;
+    private final Config config;
+    private final Class<?> tClass;
+    private final ImportOptions options;
+    private final List<String> columns = new ArrayList<>();
+    private final List<Field> compressed = new ArrayList<>();
+    private final List<String> types = new ArrayList<>();
+    private final Map<String, Integer> positions = new HashMap<>();
+    private final List<BlockingQueue<List<Object[]>>> queues = new ArrayList<>();
+    private ToIntFunction<Object[]> router;
+    private volatile Throwable failure;
+    private volatile boolean aborted;
+    private volatile long parseNanos;
+
+
+    private Importer(List<Runner> runners, Config config, Class<?> tClass, Map<String, String> tableColumns, ImportOptions options) {
+        this.runners = runners;
+        this.config = config;
+        this.tClass = tClass;
+        this.options = options;
+        for (int i = 0; i < runners.size(); i++) {
+            queues.add(new ArrayBlockingQueue<>(Math.max(1, options.queueSize)));
+        }
+        Reflect<?> reflect = new Reflect<>(tClass);
+        Set<String> existing = new HashSet<>();
+        tableColumns.keySet().forEach(column -> existing.add(column.toLowerCase()));
+        reflect.getDBColumnsWithType((column, type) -> {
+            if (!existing.isEmpty() && !existing.contains(column.toLowerCase())) {
+                return;
+            }
+            positions.put(column, columns.size());
+            columns.add(column);
+            types.add(type);
+            compressed.add(reflect.isCompressed(column) ? reflect.getField(column) : null);
+        });
+    }
+
+
+    static ImportReport run(Runner runner, Config config, Class<?> tClass, Map<String, String> tableColumns, LongSupplier ids,
+                            Path path, Format format, ImportOptions options) {
+        Importer importer = new Importer(Collections.singletonList(runner), config, tClass, tableColumns, options);
+        if (ids != null) {
+            Integer id = importer.positions.get("id");
+            if (id == null) {
+                throw new IllegalArgumentException("Sequenced imports need the id column");
+            }
+            importer.router = row -> {
+                if (row[id] == null) {
+                    row[id] = ids.getAsLong();
+                }
+                return 0;
+            };
+        }
+        return importer.run(path, format);
+    }
+
+
+    static ImportReport run(List<Core> shards, Class<?> tClass, String key, LongSupplier ids, ToIntFunction<Object> index,
+                            Path path, Format format, ImportOptions options) {
+        Core first = shards.get(0);
+        List<Runner> runners = shards.stream().map(Core::runner).collect(Collectors.toList());
+        Importer importer = new Importer(runners, first.config(), tClass, first.columns(tClass), options);
+        Integer id = importer.positions.get("id");
+        Integer position = importer.positions.get(key);
+        if (id == null || position == null) {
+            throw new IllegalArgumentException("Sharded imports need the id and shard key columns: " + key);
+        }
+        importer.router = row -> {
+            if (row[id] == null) {
+                row[id] = ids.getAsLong();
+            }
+            if (row[position] == null) {
+                throw new IllegalArgumentException("Shard key " + key + " must not be null");
+            }
+            return index.applyAsInt(row[position]);
+        };
+        return importer.run(path, format);
+    }
+
+
+    private ImportReport run(Path path, Format format) {
+        long begin = System.nanoTime();
+        Thread producer = new Thread(() -> produce(path, format), "orm-import-" + tClass.getSimpleName().toLowerCase());
+        producer.setDaemon(true);
+        producer.start();
+        long[][] inserts = new long[runners.size()][2];
+        long[] indexNanos = new long[1];
+        List<List<IndexDefinition>> indexes = new ArrayList<>();
+        try {
+            if (options.dropIndexes) {
+                long start = System.nanoTime();
+                for (Runner runner : runners) {
+                    indexes.add(dropIndexes(runner));
+                }
+                indexNanos[0] += System.nanoTime() - start;
+            }
+            if (runners.size() == 1) {
+                load(0, inserts[0]);
+            } else {
+                loadAll(inserts);
+            }
+        } catch (RuntimeException e) {
+            aborted = true;
+            producer.interrupt();
+            throw e;
+        } finally {
+            long start = System.nanoTime();
+            for (int i = 0; i < indexes.size(); i++) {
+                Runner runner = runners.get(i);
+                indexes.get(i).forEach(index -> runner.executeUpdate(SQLTemplate.createIndex(index, config)));
+            }
+            indexNanos[0] += System.nanoTime() - start;
+        }
+        long rows = 0;
+        long insertNanos = 0;
+        for (long[] insert : inserts) {
+            rows += insert[0];
+            insertNanos = Math.max(insertNanos, insert[1]);
+        }
+        long total = System.nanoTime() - begin;
+        return new ImportReport(rows, parseNanos / 1_000_000, insertNanos / 1_000_000, indexNanos[0] / 1_000_000, total / 1_000_000);
+    }
+
+
+    private void loadAll(long[][] inserts) {
+        Throwable[] errors = new Throwable[runners.size()];
+        List<Thread> consumers = new ArrayList<>();
+        for (int i = 0; i < runners.size(); i++) {
+            int target = i;
+            Thread consumer = new Thread(() -> {
+                try {
+                    load(target, inserts[target]);
+                } catch (Throwable e) {
+                    errors[target] = e;
+                    aborted = true;
+                }
+            }, "orm-import-" + tClass.getSimpleName().toLowerCase() + "-" + i);
+            consumer.setDaemon(true);
+            consumer.start();
+            consumers.add(consumer);
+        }
+        try {
+            for (Thread consumer : consumers) {
+                consumer.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        for (Throwable error : errors) {
+            if (error != null) {
+                throw (error instanceof RuntimeException) ? (RuntimeException) error : new RuntimeException(error);
+            }
+        }
+    }
+
+
+    private void load(int target, long[] insert) {
+        Runner runner = runners.get(target);
+        runner.executeConnection(connection -> {
+            Map<String, Object> pragmas = options.bulkPragmas ? applyPragmas(connection) : Collections.emptyMap();
+            try {
+                return runner.transaction(connection, c -> {
+                    consume(c, queues.get(target), insert);
+                    return null;
+                });
+            } finally {
+                restorePragmas(connection, pragmas);
+            }
+        });
+    }
+
+
+    private List<Object[]> take(BlockingQueue<List<Object[]>> queue) throws InterruptedException {
+        while (true) {
+            List<Object[]> batch = queue.poll(100, TimeUnit.MILLISECONDS);
+            if (batch != null) {
+                return batch;
+            }
+            if (aborted) {
+                throw new IllegalStateException("Import aborted");
+            }
+        }
+    }
+
+
+    private void consume(Connection connection, BlockingQueue<List<Object[]>> queue, long[] insert) throws Exception {
+        String sql = String.format("insert into %s (%s) values (%s)", tClass.getSimpleName().toLowerCase(),
+                String.join(",", columns), String.join(",", Collections.nCopies(columns.size(), "?")));
+        long uncommitted = 0;
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            while (true) {
+                List<Object[]> batch = take(queue);
+                if (batch == END) {
+                    break;
+                }
+                long start = System.nanoTime();
+                for (Object[] row : batch) {
+                    for (int i = 0; i < row.length; i++) {
+                        statement.setObject(i + 1, row[i]);
+                    }
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+                insert[0] += batch.size();
+                uncommitted += batch.size();
+                if (uncommitted >= options.transactionSize) {
+                    connection.commit();
+                    uncommitted = 0;
+                }
+                insert[1] += System.nanoTime() - start;
+            }
+        }
+        if (failure != null) {
+            throw new RuntimeException(failure);
+        }
+    }
+
+
+    private void produce(Path path, Format format) {
+        long start = System.nanoTime();
+        try (Reader reader = open(path)) {
+            Parser parser = new Parser(reader);
+            int batchSize = Math.max(1, options.batchSize);
+            List<List<Object[]>> batches = new ArrayList<>();
+            for (int i = 0; i < queues.size(); i++) {
+                batches.add(new ArrayList<>(batchSize));
+            }
+            int[] header = (format == Format.CSV) ? header(parser.csv()) : null;
+            while (true) {
+                Object[] row = (format == Format.CSV) ? csvRow(parser, header) : jsonRow(parser);
+                if (row == null) {
+                    break;
+                }
+                int target = (router != null) ? router.applyAsInt(row) : 0;
+                List<Object[]> batch = batches.get(target);
+                batch.add(row);
+                if (batch.size() >= batchSize) {
+                    queues.get(target).put(batch);
+                    batches.set(target, new ArrayList<>(batchSize));
+                }
+            }
+            for (int i = 0; i < queues.size(); i++) {
+                if (!batches.get(i).isEmpty()) {
+                    queues.get(i).put(batches.get(i));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (Throwable e) {
+            failure = e;
+        } finally {
+            parseNanos = System.nanoTime() - start;
+        }
+        try {
+            for (BlockingQueue<List<Object[]>> queue : queues) {
+                queue.put(END);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+    private Reader open(Path path) throws IOException {
+        InputStream stream = Channels.newInputStream(FileChannel.open(path, StandardOpenOption.READ));
+        boolean gzip = (options.gzip != null) ? options.gzip : path.toString().endsWith(".gz");
+        if (gzip) {
+            stream = new GZIPInputStream(stream, 1 << 16);
+        }
+        return new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8), Math.max(8192, options.bufferSize));
+    }
+
+
+    private int[] header(List<String> names) {
+        if (names == null) {
+            return new int[0];
+        }
+        int[] header = new int[names.size()];
+        for (int i = 0; i < header.length; i++) {
+            header[i] = positions.getOrDefault(names.get(i).trim(), -1);
+        }
+        return header;
+    }
+
+
+    private Object[] csvRow(Parser parser, int[] header) throws IOException {
+        List<String> values = parser.csv();
+        if (values == null) {
+            return null;
+        }
+        Object[] row = new Object[columns.size()];
+        for (int i = 0; i < header.length && i < values.size(); i++) {
+            int position = header[i];
+            String value = values.get(i);
+            if (position >= 0 && value != null && !value.isEmpty()) {
+                row[position] = convert(value, types.get(position), compressed.get(position));
+            }
+        }
+        return row;
+    }
+
+
+    private Object[] jsonRow(Parser parser) throws IOException {
+        Object[] row = new Object[columns.size()];
+        return parser.json((key, value) -> {
+            Integer position = positions.get(key);
+            if (position != null && value != null) {
+                row[position] = convert(value, types.get(position), compressed.get(position));
+            }
+        }) ? row : null;
+    }
+
+
+    private static Object convert(String value, String type, Field compressed) {
+        if (compressed != null) {
+            return Compression.encode(compressed, value);
+        }
+        switch (type) {
+            case "integer": return Long.parseLong(value.trim());
+            case "real": return Double.parseDouble(value.trim());
+            case "blob": return (Objects.equals(value, "true") || Objects.equals(value, "1")) ? 1 : 0;
+            default: return value;
+        }
+    }
+
+
+    private List<IndexDefinition> dropIndexes(Runner runner) {
+        List<IndexDefinition> indexes = new ArrayList<>();
+        String tableName = tClass.getSimpleName().toLowerCase();
+        Set<String> existing = new HashSet<>();
+        runner.getMetaData(data -> {
+            try (ResultSet set = data.getIndexInfo(null, null, tableName, false, false)) {
+                while (set.next()) {
+                    Optional.ofNullable(set.getString("INDEX_NAME")).ifPresent(existing::add);
+                }
+            }
+        });
+        boolean sqlite = Objects.equals(config.driver, Config.Driver.SQLITE);
+        for (IndexDefinition index : new Reflect<>(tClass).getIndexList()) {
+            if (existing.contains(index.name)) {
+                runner.executeUpdate(SQLTemplate.dropIndex(sqlite ? null : tableName, index.name));
+                indexes.add(index);
+            }
+        }
+        return indexes;
+    }
+
+
+    private Map<String, Object> applyPragmas(Connection connection) throws Exception {
+        Map<String, Object> previous = new LinkedHashMap<>();
+        if (!Objects.equals(config.driver, Config.Driver.SQLITE)) {
+            return previous;
+        }
+        try (Statement statement = connection.createStatement()) {
+            for (String pragma : new String[]{"synchronous", "cache_size", "temp_store"}) {
+                try (ResultSet set = statement.executeQuery("pragma " + pragma)) {
+                    if (set.next()) {
+                        previous.put(pragma, set.getObject(1));
+                    }
+                }
+            }
+            statement.execute("pragma synchronous = off");
+            statement.execute("pragma cache_size = -65536");
+            statement.execute("pragma temp_store = memory");
+        }
+        return previous;
+    }
+
+
+    private void restorePragmas(Connection connection, Map<String, Object> pragmas) throws Exception {
+        try (Statement statement = connection.createStatement()) {
+            for (Map.Entry<String, Object> entry : pragmas.entrySet()) {
+                statement.execute(String.format("pragma %s = %s", entry.getKey(), entry.getValue()));
+            }
+        }
+    }
+
+
+    private static final class Parser {
+
+        private final Reader reader;
+        private final char[] buffer = new char[1 << 16];
+        private final StringBuilder builder = new StringBuilder();
+        private int position;
+        private int limit;
+
+
+        Parser(Reader reader) {
+            this.reader = reader;
+        }
+
+
+        private int read() throws IOException {
+            if (position == limit) {
+                limit = reader.read(buffer, 0, buffer.length);
+                position = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    return -1;
+                }
+            }
+            return buffer[position++];
+        }
+
+
+        private int peek() throws IOException {
+            int c = read();
+            if (c >= 0) {
+                position--;
+            }
+            return c;
+        }
+
+
+        List<String> csv() throws IOException {
+            int c = read();
+            while (c == '\r' || c == '\n') {
+                c = read();
+            }
+            if (c < 0) {
+                return null;
+            }
+            List<String> values = new ArrayList<>();
+            builder.setLength(0);
+            boolean quoted = false;
+            while (true) {
+                if (quoted) {
+                    if (c < 0) {
+                        throw new IOException("Unterminated quoted CSV field");
+                    } else if (c == '"') {
+                        if (peek() == '"') {
+                            builder.append('"');
+                            read();
+                        } else {
+                            quoted = false;
+                        }
+                    } else {
+                        builder.append((char) c);
+                    }
+                } else if (c == '"') {
+                    quoted = true;
+                } else if (c == ',') {
+                    values.add(builder.toString());
+                    builder.setLength(0);
+                } else if (c == '\n' || c == '\r' || c < 0) {
+                    values.add(builder.toString());
+                    return values;
+                } else {
+                    builder.append((char) c);
+                }
+                c = read();
+            }
+        }
+
+
+        boolean json(Entry consumer) throws IOException {
+            int c = skipWhitespace();
+            if (c < 0) {
+                return false;
+            }
+            if (c != '{') {
+                throw new IOException("Expected '{' at the start of a JSON line");
+            }
+            c = skipWhitespace();
+            while (c != '}') {
+                if (c != '"') {
+                    throw new IOException("Expected a JSON key");
+                }
+                String key = string();
+                if (skipWhitespace() != ':') {
+                    throw new IOException("Expected ':' after JSON key " + key);
+                }
+                c = skipWhitespace();
+                String value;
+                if (c == '"') {
+                    value = string();
+                    c = skipWhitespace();
+                } else {
+                    builder.setLength(0);
+                    while (c >= 0 && c != ',' && c != '}' && !Character.isWhitespace(c)) {
+                        if (c == '{' || c == '[') {
+                            throw new IOException("Nested JSON values are not supported: " + key);
+                        }
+                        builder.append((char) c);
+                        c = read();
+                    }
+                    while (c >= 0 && Character.isWhitespace(c)) {
+                        c = read();
+                    }
+                    value = builder.toString();
+                    value = Objects.equals(value, "null") ? null : value;
+                }
+                consumer.accept(key, value);
+                if (c == ',') {
+                    c = skipWhitespace();
+                } else if (c != '}') {
+                    throw new IOException("Expected ',' or '}' in JSON object");
+                }
+            }
+            return true;
+        }
+
+
+        private int skipWhitespace() throws IOException {
+            int c = read();
+            while (c >= 0 && Character.isWhitespace(c)) {
+                c = read();
+            }
+            return c;
+        }
+
+
+        private String string() throws IOException {
+            builder.setLength(0);
+            while (true) {
+                int c = read();
+                if (c < 0) {
+                    throw new IOException("Unterminated JSON string");
+                } else if (c == '"') {
+                    return builder.toString();
+                } else if (c == '\\') {
+                    int e = read();
+                    switch (e) {
+                        case 'n': builder.append('\n'); break;
+                        case 'r': builder.append('\r'); break;
+                        case 't': builder.append('\t'); break;
+                        case 'b': builder.append('\b'); break;
+                        case 'f': builder.append('\f'); break;
+                        case 'u': {
+                            char[] hex = new char[4];
+                            for (int i = 0; i < 4; i++) {
+                                hex[i] = (char) read();
+                            }
+                            builder.append((char) Integer.parseInt(new String(hex), 16));
+                            break;
+                        }
+                        default: builder.append((char) e);
+                    }
+                } else {
+                    builder.append((char) c);
+                }
+            }
+        }
+
+
+        interface Entry {
+            void accept(String key, String value);
+        }
+
+    }
+
+}
@@ -0,0 +1,93 @@
+/**
+ * Copyright 2023 Zhang Guanhu
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.artbits.orm;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+final class IndexDefinition {
+
+    final String name;
+    final String table;
+    final List<String> columns = new ArrayList<>();
+    final boolean unique;
+    final boolean fulltext;
+    final String where;
+
+
+    IndexDefinition(String table, Index index) {
+        this.table = table;
+        this.unique = index.unique();
+        this.fulltext = false;
+        this.where = index.where().trim().isEmpty() ? null : index.where().trim();
+        for (String column : index.columns()) {
+            columns.add(column.trim().replaceAll("\\s+", " ").toLowerCase());
+        }
+        for (String column : index.include()) {
+            if (!columns.contains(column.trim().toLowerCase())) {
+                columns.add(column.trim().toLowerCase());
+            }
+        }
+        if (!index.name().trim().isEmpty()) {
+            this.name = index.name().trim();
+        } else {
+            StringBuilder builder = new StringBuilder("idx_").append(table);
+            for (String column : index.columns()) {
+                builder.append("_").append(column.trim().split("\\s+")[0].toLowerCase());
+            }
+            this.name = builder.toString();
+        }
+        if (unique && index.include().length > 0) {
+            throw new IllegalArgumentException("Unique indexes can't include covering columns, they would join the uniqueness key: " + name);
+        }
+    }
+
+
+    IndexDefinition(String table, String column, boolean unique) {
+        this.table = table;
+        this.name = String.format("idx_%s_%s", table, column);
+        this.columns.add(column);
+        this.unique = unique;
+        this.fulltext = false;
+        this.where = null;
+    }
+
+
+    IndexDefinition(String table, List<String> columns) {
+        this.table = table;
+        this.name = table + "_fts";
+        this.columns.addAll(columns);
+        this.unique = false;
+        this.fulltext = true;
+        this.where = null;
+    }
+
+
+    String signature(Config config) {
+        if (Objects.equals(config.driver, Config.Driver.SQLITE)) {
+            return normalize(fulltext ? SQLTemplate.createFulltext(this) : SQLTemplate.createIndex(this, config));
+        }
+        return (fulltext ? "fulltext " : unique ? "unique " : "") + String.join(",", columns);
+    }
+
+
+    static String normalize(String sql) {
+        String s = sql.trim().replaceAll("\\s+", " ").replaceAll("\\s*([(),])\\s*", "$1").toLowerCase();
+        return s.endsWith(";") ? s.substring(0, s.length() - 1) : s;
+    }
+}
@@ -16,193 +16,212 @@
 
 package com.github.artbits.orm;
 
+import java.io.IOException;
 import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
 import java.math.BigDecimal;
 import java.math.BigInteger;
-import java.util.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 
 final class JsonObject {
 
-    private final Map<String, String> map = new LinkedHashMap<>();
-
-
-    <T> JsonObject(T t) {
-        beanToMap(t);
-    }
-
-
-    private <T> void beanToMap(T t) {
-        try {
-            map.put("\"_id\"", null);
-            Class<?> clazz = t.getClass();
-            while (clazz != null) {
+    private final static ClassValue<Field[]> FIELDS = new ClassValue<Field[]>() {
+        @Override
+        protected Field[] computeValue(Class<?> type) {
+            List<Field> fields = new ArrayList<>();
+            for (Class<?> clazz = type; clazz != null; clazz = clazz.getSuperclass()) {
                 for (Field field : clazz.getDeclaredFields()) {
-                    field.setAccessible(true);
-                    putMap(field.getName(), field.get(t));
+                    if (!Modifier.isStatic(field.getModifiers()) && !field.isSynthetic()) {
+                        field.setAccessible(true);
+                        fields.add(field);
+                    }
                 }
-                clazz = clazz.getSuperclass();
             }
-        } catch (IllegalAccessException e) {
-            throw new RuntimeException(e);
+            return fields.toArray(new Field[0]);
         }
-    }
+    };
 
+    private final Object object;
 
-    private void putMap(String fieldName, Object fieldValue) {
-        if (fieldName == null || fieldValue == null || fieldValue instanceof Enum<?>) {
-            return;
-        } else {
-            fieldName = "\"" + fieldName + "\"";
-        }
 
-        if (fieldValue instanceof String || fieldValue instanceof Character) {
-            if (!"\u0000".equals(String.valueOf(fieldValue))) {
-                map.put(fieldName, "\"" + fieldValue + "\"");
-            }
-            return;
-        }
-        if (fieldValue instanceof Byte || fieldValue instanceof Short
-                || fieldValue instanceof Integer || fieldValue instanceof Long
-                || fieldValue instanceof Boolean || fieldValue instanceof Float
-                || fieldValue instanceof Double || fieldValue instanceof BigInteger
-                || fieldValue instanceof BigDecimal) {
-            map.put(fieldName, String.valueOf(fieldValue));
-            return;
-        }
-        if (fieldValue.getClass().isArray()) {
-            map.put(fieldName, arrayToJSONString(fieldValue));
-            return;
-        }
-        if (fieldValue instanceof Collection<?>) {
-            map.put(fieldName, collectionToJSONString((Collection<?>) fieldValue));
-            return;
-        }
-        if (fieldValue instanceof Map<?, ?>) {
-            map.put(fieldName, mapToJSONString((Map<?, ?>) fieldValue));
-            return;
-        }
-        map.put(fieldName, new JsonObject(fieldValue).toString());
+    <T> JsonObject(T t) {
+        this.object = t;
     }
 
 
     @Override
     public String toString() {
-        StringBuilder builder = new StringBuilder().append("{");
-        map.forEach((k, v) -> Optional.ofNullable(v).ifPresent(s -> builder.append(k).append(":").append(v).append(",")));
-        return ((builder.length() > 2) ? builder.deleteCharAt(builder.length() - 1) : builder).append("}").toString();
+        StringBuilder builder = new StringBuilder(128);
+        write(object, builder);
+        return builder.toString();
     }
 
 
-    private static String charArrayToJSONString(char[] chars) {
-        StringBuilder builder = new StringBuilder();
-        builder.append("[");
-        for (char c : chars) {
-            builder.append("\"").append(c).append("\"").append(",");
+    static void write(Object object, Appendable out) {
+        try {
+            writeObject(object, out);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
         }
-        return ((builder.length() > 2) ? builder.deleteCharAt(builder.length() - 1) : builder).append("]").toString();
     }
 
 
-    private static <T> String objectArrayToJSONString(T[] arrays) {
-        StringBuilder builder = new StringBuilder();
-        builder.append("[");
-        for (Object o : arrays) {
-            ifTextType(o, () -> {
-                builder.append("\"").append(o).append("\"").append(",");
-            }, () -> {
-                builder.append(new JsonObject(o)).append(",");
-            });
+    private static void writeObject(Object object, Appendable out) throws IOException {
+        out.append('{');
+        boolean first = true;
+        try {
+            for (Field field : FIELDS.get(object.getClass())) {
+                Object value = field.get(object);
+                if (value == null || value instanceof Enum<?> || (value instanceof Character && (Character) value == '\u0000')) {
+                    continue;
+                }
+                if (!first) {
+                    out.append(',');
+                }
+                first = false;
+                escape(out, field.getName());
+                out.append(':');
+                writeValue(value, out);
+            }
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException(e);
         }
-        return ((builder.length() > 2) ? builder.deleteCharAt(builder.length() - 1) : builder).append("]").toString();
+        out.append('}');
     }
 
 
-    private static String arrayToJSONString(Object object) {
-        if (object instanceof byte[]) {
-            return Arrays.toString((byte[]) object).replaceAll(" ", "");
-        }
-        if (object instanceof short[]) {
-            return Arrays.toString((short[]) object).replaceAll(" ", "");
-        }
-        if (object instanceof int[]) {
-            return Arrays.toString((int[]) object).replaceAll(" ", "");
-        }
-        if (object instanceof long[]) {
-            return Arrays.toString((long[]) object).replaceAll(" ", "");
-        }
-        if (object instanceof float[]) {
-            return Arrays.toString((float[]) object).replaceAll(" ", "");
-        }
-        if (object instanceof double[]) {
-            return Arrays.toString((double[]) object).replaceAll(" ", "");
-        }
-        if (object instanceof boolean[]) {
-            return Arrays.toString((boolean[]) object);
-        }
-        if (object instanceof char[]) {
-            return charArrayToJSONString((char[]) object);
-        }
-        if (object instanceof Object[]) {
-            return objectArrayToJSONString((Object[]) object);
+    private static void writeValue(Object value, Appendable out) throws IOException {
+        if (value == null) {
+            out.append("null");
+        } else if (value instanceof String) {
+            escape(out, (String) value);
+        } else if (value instanceof Character || value instanceof Enum<?>) {
+            escape(out, value.toString());
+        } else if (value instanceof Byte || value instanceof Short
+                || value instanceof Integer || value instanceof Long
+                || value instanceof Boolean || value instanceof Float
+                || value instanceof Double || value instanceof BigInteger
+                || value instanceof BigDecimal) {
+            out.append(value.toString());
+        } else if (value.getClass().isArray()) {
+            writeArray(value, out);
+        } else if (value instanceof Collection<?>) {
+            out.append('[');
+            boolean first = true;
+            for (Object o : (Collection<?>) value) {
+                if (!first) {
+                    out.append(',');
+                }
+                first = false;
+                writeValue(o, out);
+            }
+            out.append(']');
+        } else if (value instanceof Map<?, ?>) {
+            out.append('{');
+            boolean first = true;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                if (entry.getKey() == null || entry.getValue() == null) {
+                    continue;
+                }
+                if (!first) {
+                    out.append(',');
+                }
+                first = false;
+                escape(out, String.valueOf(entry.getKey()));
+                out.append(':');
+                writeValue(entry.getValue(), out);
+            }
+            out.append('}');
+        } else {
+            writeObject(value, out);
         }
-        return null;
-    }
-
-
-    private static String collectionToJSONString(Collection<?> collection) {
-        StringBuilder builder = new StringBuilder();
-        builder.append("[");
-        collection.forEach(o -> {
-            ifBasicType(o, () -> {
-                builder.append(o).append(",");
-            }, () -> {
-                ifTextType(o, () -> {
-                    builder.append("\"").append(o).append("\"").append(",");
-                }, () -> {
-                    builder.append(new JsonObject(o)).append(",");
-                });
-            });
-        });
-        return ((builder.length() > 2) ? builder.deleteCharAt(builder.length() - 1) : builder).append("]").toString();
     }
 
 
-    private static String mapToJSONString(Map<?, ?> map) {
-        StringBuilder builder = new StringBuilder();
-        builder.append("{");
-        map.forEach((k, v) -> Optional.ofNullable((k != null && v != null) ? k : null).ifPresent(o -> {
-            builder.append("\"").append(k).append("\":");
-            ifBasicType(v, () -> {
-                builder.append(v).append(",");
-            }, () -> {
-                ifTextType(v, () -> {
-                    builder.append("\"").append(v).append("\"").append(",");
-                }, () -> {
-                    builder.append(new JsonObject(v)).append(",");
-                });
-            });
-        }));
-        return ((builder.length() > 2) ? builder.deleteCharAt(builder.length() - 1) : builder).append("}").toString();
-    }
-
-
-    private static void ifBasicType(Object o, Runnable runnable1, Runnable runnable2) {
-        if (o instanceof Byte || o instanceof Short || o instanceof Integer
-                || o instanceof Long || o instanceof Boolean || o instanceof Float
-                || o instanceof Double || o instanceof BigInteger || o instanceof BigDecimal) {
-            Optional.ofNullable(runnable1).ifPresent(Runnable::run);
+    private static void writeArray(Object array, Appendable out) throws IOException {
+        out.append('[');
+        if (array instanceof byte[]) {
+            byte[] values = (byte[]) array;
+            for (int i = 0; i < values.length; i++) {
+                (i > 0 ? out.append(',') : out).append(Integer.toString(values[i]));
+            }
+        } else if (array instanceof short[]) {
+            short[] values = (short[]) array;
+            for (int i = 0; i < values.length; i++) {
+                (i > 0 ? out.append(',') : out).append(Integer.toString(values[i]));
+            }
+        } else if (array instanceof int[]) {
+            int[] values = (int[]) array;
+            for (int i = 0; i < values.length; i++) {
+                (i > 0 ? out.append(',') : out).append(Integer.toString(values[i]));
+            }
+        } else if (array instanceof long[]) {
+            long[] values = (long[]) array;
+            for (int i = 0; i < values.length; i++) {
+                (i > 0 ? out.append(',') : out).append(Long.toString(values[i]));
+            }
+        } else if (array instanceof float[]) {
+            float[] values = (float[]) array;
+            for (int i = 0; i < values.length; i++) {
+                (i > 0 ? out.append(',') : out).append(Float.toString(values[i]));
+            }
+        } else if (array instanceof double[]) {
+            double[] values = (double[]) array;
+            for (int i = 0; i < values.length; i++) {
+                (i > 0 ? out.append(',') : out).append(Double.toString(values[i]));
+            }
+        } else if (array instanceof boolean[]) {
+            boolean[] values = (boolean[]) array;
+            for (int i = 0; i < values.length; i++) {
+                (i > 0 ? out.append(',') : out).append(values[i] ? "true" : "false");
+            }
+        } else if (array instanceof char[]) {
+            char[] values = (char[]) array;
+            for (int i = 0; i < values.length; i++) {
+                escape(i > 0 ? out.append(',') : out, String.valueOf(values[i]));
+            }
         } else {
-            Optional.ofNullable(runnable2).ifPresent(Runnable::run);
+            Object[] values = (Object[]) array;
+            for (int i = 0; i < values.length; i++) {
+                writeValue(values[i], i > 0 ? out.append(',') : out);
+            }
         }
+        out.append(']');
     }
 
 
-    private static void ifTextType(Object o, Runnable runnable1, Runnable runnable2) {
-        if (o instanceof String || o instanceof Character) {
-            Optional.ofNullable(runnable1).ifPresent(Runnable::run);
-        } else {
-            Optional.ofNullable(runnable2).ifPresent(Runnable::run);
+    static void escape(Appendable out, CharSequence value) throws IOException {
+        out.append('"');
+        int start = 0;
+        for (int i = 0, n = value.length(); i < n; i++) {
+            char c = value.charAt(i);
+            String replacement;
+            if (c == '"') {
+                replacement = "\\\"";
+            } else if (c == '\\') {
+                replacement = "\\\\";
+            } else if (c >= 0x20 && c != '\u2028' && c != '\u2029') {
+                continue;
+            } else if (c == '\n') {
+                replacement = "\\n";
+            } else if (c == '\r') {
+                replacement = "\\r";
+            } else if (c == '\t') {
+                replacement = "\\t";
+            } else if (c == '\b') {
+                replacement = "\\b";
+            } else if (c == '\f') {
+                replacement = "\\f";
+            } else {
+                replacement = String.format("\\u%04x", (int) c);
+            }
+            out.append(value, start, i).append(replacement);
+            start = i + 1;
         }
+        out.append(value, start, value.length()).append('"');
     }
 
-}
\ No newline at end of file
+}
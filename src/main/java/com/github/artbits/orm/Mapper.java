@@ -0,0 +1,104 @@
+/**
+ * Copyright 2023 Zhang Guanhu
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.artbits.orm;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.function.Consumer;
+
+final class Mapper<T> {
+
+    private final static int INT = 0;
+    private final static int BYTE = 1;
+    private final static int SHORT = 2;
+    private final static int LONG = 3;
+    private final static int FLOAT = 4;
+    private final static int DOUBLE = 5;
+    private final static int STRING = 6;
+    private final static int BOOLEAN = 7;
+    private final static int COMPRESSED = 8;
+
+    private final Constructor<T> constructor;
+    private final Field[] fields;
+    private final int[] kinds;
+
+
+    Mapper(Class<T> tClass, ResultSetMetaData metaData) throws SQLException, NoSuchMethodException {
+        Reflect<T> reflect = new Reflect<>(tClass);
+        constructor = tClass.getConstructor(Consumer.class);
+        int count = metaData.getColumnCount();
+        fields = new Field[count];
+        kinds = new int[count];
+        for (int i = 0; i < count; i++) {
+            String name = metaData.getColumnName(i + 1);
+            if (reflect.hasField(name)) {
+                fields[i] = reflect.getField(name);
+                kinds[i] = Compression.isCompressed(fields[i]) ? COMPRESSED : kind(fields[i].getType());
+            }
+        }
+    }
+
+
+    T map(ResultSet set) {
+        try {
+            T t = constructor.newInstance((Consumer<T>) (c -> {}));
+            for (int i = 0; i < fields.length; i++) {
+                Field field = fields[i];
+                if (field == null || kinds[i] < 0) {
+                    continue;
+                }
+                int column = i + 1;
+                switch (kinds[i]) {
+                    case INT: field.set(t, set.getInt(column)); break;
+                    case BYTE: field.set(t, set.getByte(column)); break;
+                    case SHORT: field.set(t, set.getShort(column)); break;
+                    case LONG: field.set(t, set.getLong(column)); break;
+                    case FLOAT: field.set(t, set.getFloat(column)); break;
+                    case DOUBLE: field.set(t, set.getDouble(column)); break;
+                    case STRING: field.set(t, set.getString(column)); break;
+                    case BOOLEAN: field.set(t, set.getBoolean(column)); break;
+                    case COMPRESSED: field.set(t, Compression.decode(field, set.getBytes(column))); break;
+                }
+            }
+            return t;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+
+    private static int kind(Class<?> type) {
+        switch (type.getSimpleName().toLowerCase()) {
+            case "int":
+            case "integer": return INT;
+            case "byte": return BYTE;
+            case "short": return SHORT;
+            case "long": return LONG;
+            case "float": return FLOAT;
+            case "double": return DOUBLE;
+            case "char":
+            case "character":
+            case "string": return STRING;
+            case "boolean": return BOOLEAN;
+            default: return -1;
+        }
+    }
+
+}
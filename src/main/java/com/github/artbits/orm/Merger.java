@@ -0,0 +1,80 @@
+/**
+ * Copyright 2023 Zhang Guanhu
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.artbits.orm;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+final class Merger {
+
+    static <T> List<T> merge(List<List<T>> parts, Options options) {
+        List<T> list = new ArrayList<>();
+        parts.forEach(list::addAll);
+        if (options == null) {
+            return list;
+        }
+        if (options.orderColumns != null && !list.isEmpty()) {
+            list.sort(comparator(list.get(0).getClass(), options.orderColumns));
+        }
+        return window(list, options);
+    }
+
+
+    static <T> List<T> window(List<T> list, Options options) {
+        int from = (int) Math.min(list.size(), (options.offsetSize != null) ? options.offsetSize : 0);
+        int to = (int) Math.min(list.size(), (options.limitSize != null) ? from + options.limitSize : list.size());
+        return (from == 0 && to == list.size()) ? list : new ArrayList<>(list.subList(from, to));
+    }
+
+
+    static Options scatter(Options options) {
+        if (options == null) {
+            return null;
+        }
+        Options part = options.copy();
+        part.offsetSize = null;
+        part.includeRelations = null;
+        if (options.limitSize != null) {
+            part.limitSize = options.limitSize + ((options.offsetSize != null) ? options.offsetSize : 0);
+        }
+        return part;
+    }
+
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    static <T> Comparator<T> comparator(Class<?> tClass, String orderColumns) {
+        Comparator<T> comparator = null;
+        for (String term : orderColumns.split(",")) {
+            String[] parts = term.trim().split("\\s+");
+            String column = parts[0];
+            boolean descending = parts.length > 1 && parts[parts.length - 1].equalsIgnoreCase(Options.DESC);
+            Comparator<T> next = (a, b) -> {
+                Comparable x = (Comparable) new Reflect<>(a).getValue(column);
+                Comparable y = (Comparable) new Reflect<>(b).getValue(column);
+                if (x == null || y == null) {
+                    return (x == null) ? ((y == null) ? 0 : -1) : 1;
+                }
+                return x.compareTo(y);
+            };
+            next = descending ? next.reversed() : next;
+            comparator = (comparator == null) ? next : comparator.thenComparing(next);
+        }
+        return comparator;
+    }
+
+}
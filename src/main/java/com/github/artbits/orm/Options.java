@@ -26,6 +26,7 @@ public final class Options {
     String orderColumns;
     Long limitSize;
     Long offsetSize;
+    String[] includeRelations;
 
 
     public final static String ASC = "asc";
@@ -98,4 +99,23 @@ public final class Options {
         return this;
     }
 
+
+    Options copy() {
+        Options options = new Options();
+        options.selectColumns = selectColumns;
+        options.wherePredicate = wherePredicate;
+        options.groupColumns = groupColumns;
+        options.orderColumns = orderColumns;
+        options.limitSize = limitSize;
+        options.offsetSize = offsetSize;
+        options.includeRelations = includeRelations;
+        return options;
+    }
+
+
+    public Options include(String... relations) {
+        includeRelations = relations;
+        return this;
+    }
+
 }
@@ -0,0 +1,141 @@
+/**
+ * Copyright 2023 Zhang Guanhu
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.artbits.orm;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+final class Partitioner {
+
+    private final static ClassValue<Partitioner> PARTITIONERS = new ClassValue<Partitioner>() {
+        @Override
+        protected Partitioner computeValue(Class<?> type) {
+            Partition partition = type.getAnnotation(Partition.class);
+            return (partition != null) ? new Partitioner(type, partition) : null;
+        }
+    };
+
+    private final static Pattern DISJUNCTION = Pattern.compile("\\b(or|not)\\b", Pattern.CASE_INSENSITIVE);
+
+    final String base;
+    final String column;
+    final String period;
+    private final DateTimeFormatter formatter;
+    private final Pattern tables;
+    private final Pattern comparison;
+    private final Pattern between;
+
+
+    private Partitioner(Class<?> tClass, Partition partition) {
+        base = tClass.getSimpleName().toLowerCase();
+        column = partition.column();
+        period = partition.period().toLowerCase(Locale.ROOT);
+        Reflect<?> reflect = new Reflect<>(tClass);
+        if (!reflect.hasField(column) || !Objects.equals(reflect.getDatabaseType(column), "integer")) {
+            throw new IllegalArgumentException("Partition column must be an integer field holding epoch millis: " + column);
+        }
+        if (!reflect.getFulltextColumns().isEmpty()) {
+            throw new IllegalArgumentException("Partitioned classes can't have full-text columns: " + tClass.getSimpleName());
+        }
+        switch (period) {
+            case Partition.Period.DAY: formatter = DateTimeFormatter.ofPattern("yyyy_MM_dd"); break;
+            case Partition.Period.MONTH: formatter = DateTimeFormatter.ofPattern("yyyy_MM"); break;
+            case Partition.Period.YEAR: formatter = DateTimeFormatter.ofPattern("yyyy"); break;
+            default: throw new IllegalArgumentException("Unknown partition period: " + partition.period());
+        }
+        String digits = Objects.equals(period, Partition.Period.DAY) ? "\\d{4}_\\d{2}_\\d{2}" : Objects.equals(period, Partition.Period.MONTH) ? "\\d{4}_\\d{2}" : "\\d{4}";
+        tables = Pattern.compile(Pattern.quote(base) + "_(" + digits + ")");
+        String name = "(?<![\\w.])" + Pattern.quote(column) + "(?!\\w)";
+        comparison = Pattern.compile(name + "\\s*(>=|<=|=|>|<)\\s*(-?\\d+)", Pattern.CASE_INSENSITIVE);
+        between = Pattern.compile(name + "\\s+between\\s+(-?\\d+)\\s+and\\s+(-?\\d+)", Pattern.CASE_INSENSITIVE);
+    }
+
+
+    static Partitioner of(Class<?> tClass) {
+        return PARTITIONERS.get(tClass);
+    }
+
+
+    String table(Object value) {
+        if (!(value instanceof Number)) {
+            throw new IllegalArgumentException("Partition column " + column + " must not be null");
+        }
+        LocalDate date = Instant.ofEpochMilli(((Number) value).longValue()).atZone(ZoneOffset.UTC).toLocalDate();
+        return base + "_" + formatter.format(date);
+    }
+
+
+    boolean owns(String table) {
+        return tables.matcher(table).matches();
+    }
+
+
+    long[] range(String table) {
+        Matcher matcher = tables.matcher(table);
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("Not a partition of " + base + ": " + table);
+        }
+        String[] parts = matcher.group(1).split("_");
+        LocalDate start = LocalDate.of(Integer.parseInt(parts[0]), (parts.length > 1) ? Integer.parseInt(parts[1]) : 1, (parts.length > 2) ? Integer.parseInt(parts[2]) : 1);
+        LocalDate end;
+        switch (period) {
+            case Partition.Period.DAY: end = start.plusDays(1); break;
+            case Partition.Period.MONTH: end = start.plusMonths(1); break;
+            default: end = start.plusYears(1); break;
+        }
+        return new long[]{start.atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli(), end.atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli()};
+    }
+
+
+    long[] bounds(String predicate) {
+        long low = Long.MIN_VALUE;
+        long high = Long.MAX_VALUE;
+        if (predicate == null || DISJUNCTION.matcher(predicate).find()) {
+            return new long[]{low, high};
+        }
+        Matcher matcher = between.matcher(predicate);
+        while (matcher.find()) {
+            low = Math.max(low, Long.parseLong(matcher.group(1)));
+            high = Math.min(high, Long.parseLong(matcher.group(2)));
+        }
+        matcher = comparison.matcher(predicate);
+        while (matcher.find()) {
+            long value = Long.parseLong(matcher.group(2));
+            switch (matcher.group(1)) {
+                case ">=": low = Math.max(low, value); break;
+                case ">": low = Math.max(low, value + 1); break;
+                case "<=": high = Math.min(high, value); break;
+                case "<": high = Math.min(high, value - 1); break;
+                default: low = Math.max(low, value); high = Math.min(high, value); break;
+            }
+        }
+        return new long[]{low, high};
+    }
+
+
+    boolean matches(String table, long[] bounds) {
+        long[] range = range(table);
+        return range[0] <= bounds[1] && bounds[0] < range[1];
+    }
+
+}
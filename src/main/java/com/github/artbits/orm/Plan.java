@@ -0,0 +1,112 @@
+/**
+ * Copyright 2023 Zhang Guanhu
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.artbits.orm;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public final class Plan {
+
+    private final static Pattern MYSQL_TABLE = Pattern.compile("\"table_name\"\\s*:\\s*\"([^\"]+)\"");
+    private final static Pattern MYSQL_ACCESS = Pattern.compile("\"access_type\"\\s*:\\s*\"([^\"]+)\"");
+    private final static Pattern MYSQL_KEY = Pattern.compile("\"key\"\\s*:\\s*\"([^\"]+)\"");
+    private final static Pattern MYSQL_SORT = Pattern.compile("\"using_(filesort|temporary_table)\"\\s*:\\s*true");
+
+    private final String sql;
+    private final List<String> details;
+    private final boolean fullScan;
+    private final boolean tempSort;
+
+
+    private Plan(String sql, List<String> details, boolean fullScan, boolean tempSort) {
+        this.sql = sql;
+        this.details = Collections.unmodifiableList(details);
+        this.fullScan = fullScan;
+        this.tempSort = tempSort;
+    }
+
+
+    public String sql() {
+        return sql;
+    }
+
+
+    public List<String> details() {
+        return details;
+    }
+
+
+    public boolean fullScan() {
+        return fullScan;
+    }
+
+
+    public boolean tempSort() {
+        return tempSort;
+    }
+
+
+    @Override
+    public String toString() {
+        return new JsonObject(this).toString();
+    }
+
+
+    static String explain(String sql, Config config) {
+        boolean sqlite = config.driver.equals(Config.Driver.SQLITE);
+        return (sqlite ? "explain query plan " : "explain format=json ") + sql;
+    }
+
+
+    static Plan of(String sql, Config config, ResultSet set) throws SQLException {
+        List<String> details = new ArrayList<>();
+        boolean fullScan = false;
+        boolean tempSort = false;
+        if (config.driver.equals(Config.Driver.SQLITE)) {
+            while (set.next()) {
+                String detail = set.getString("detail");
+                details.add(detail);
+                String upper = detail.toUpperCase();
+                if (upper.startsWith("SCAN ") && !upper.contains(" USING ")) {
+                    fullScan = true;
+                }
+                if (upper.contains("TEMP B-TREE")) {
+                    tempSort = true;
+                }
+            }
+        } else {
+            String json = set.next() ? set.getString(1) : "";
+            Matcher tables = MYSQL_TABLE.matcher(json);
+            Matcher accesses = MYSQL_ACCESS.matcher(json);
+            Matcher keys = MYSQL_KEY.matcher(json);
+            while (tables.find()) {
+                String access = accesses.find() ? accesses.group(1) : "?";
+                String key = (!access.equals("ALL") && keys.find()) ? keys.group(1) : "-";
+                details.add(String.format("%s %s %s", tables.group(1), access, key));
+                fullScan |= access.equals("ALL");
+            }
+            tempSort = MYSQL_SORT.matcher(json).find();
+        }
+        return new Plan(sql, details, fullScan, tempSort);
+    }
+
+}
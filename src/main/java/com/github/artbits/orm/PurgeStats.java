@@ -0,0 +1,96 @@
+/**
+ * Copyright 2023 Zhang Guanhu
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.artbits.orm;
+
+import java.util.List;
+
+public final class PurgeStats {
+
+    private final long rows;
+    private final long passes;
+    private final long contentions;
+    private final long failures;
+    private final long lagMillis;
+    private final int batchSize;
+
+
+    PurgeStats(long rows, long passes, long contentions, long failures, long lagMillis, int batchSize) {
+        this.rows = rows;
+        this.passes = passes;
+        this.contentions = contentions;
+        this.failures = failures;
+        this.lagMillis = lagMillis;
+        this.batchSize = batchSize;
+    }
+
+
+    public long rows() {
+        return rows;
+    }
+
+
+    public long passes() {
+        return passes;
+    }
+
+
+    public long contentions() {
+        return contentions;
+    }
+
+
+    public long failures() {
+        return failures;
+    }
+
+
+    public long lagMillis() {
+        return lagMillis;
+    }
+
+
+    public int batchSize() {
+        return batchSize;
+    }
+
+
+    static PurgeStats merge(List<PurgeStats> parts) {
+        long rows = 0;
+        long passes = 0;
+        long contentions = 0;
+        long failures = 0;
+        long lagMillis = 0;
+        int batchSize = Integer.MAX_VALUE;
+        for (PurgeStats part : parts) {
+            rows += part.rows;
+            passes += part.passes;
+            contentions += part.contentions;
+            failures += part.failures;
+            lagMillis = Math.max(lagMillis, part.lagMillis);
+            batchSize = Math.min(batchSize, part.batchSize);
+        }
+        return new PurgeStats(rows, passes, contentions, failures, lagMillis, parts.isEmpty() ? 0 : batchSize);
+    }
+
+
+    @Override
+    public String toString() {
+        return String.format("{\"rows\":%d,\"passes\":%d,\"contentions\":%d,\"failures\":%d,\"lagMillis\":%d,\"batchSize\":%d}",
+                rows, passes, contentions, failures, lagMillis, batchSize);
+    }
+
+}
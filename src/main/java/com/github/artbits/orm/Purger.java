@@ -0,0 +1,196 @@
+/**
+ * Copyright 2023 Zhang Guanhu
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.artbits.orm;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+final class Purger {
+
+    private final static int MIN_BATCH_SIZE = 10;
+    private final static int MAX_RETRIES = 5;
+
+    private final Runner runner;
+    private final Config config;
+    private final Function<Class<?>, List<String>> tables;
+    private final Set<Class<?>> classes = ConcurrentHashMap.newKeySet();
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder passes = new LongAdder();
+    private final LongAdder contentions = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final AtomicLong lagMillis = new AtomicLong();
+    private volatile int batchSize;
+    private volatile ScheduledExecutorService scheduler;
+
+
+    Purger(Runner runner, Config config, Function<Class<?>, List<String>> tables) {
+        this.runner = runner;
+        this.config = config;
+        this.tables = tables;
+        this.batchSize = Math.max(MIN_BATCH_SIZE, config.purgeBatchSize);
+    }
+
+
+    void register(Class<?> tClass) {
+        if (new Reflect<>(tClass).getExpiryColumn() == null || !classes.add(tClass) || config.purgeIntervalMillis <= 0) {
+            return;
+        }
+        if (scheduler == null) {
+            synchronized (this) {
+                if (scheduler == null) {
+                    scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                        Thread thread = new Thread(runnable, "orm-purger");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    scheduler.scheduleWithFixedDelay(this::run, config.purgeIntervalMillis, config.purgeIntervalMillis, TimeUnit.MILLISECONDS);
+                }
+            }
+        }
+    }
+
+
+    void forget(Class<?> tClass) {
+        classes.remove(tClass);
+    }
+
+
+    long purge(Class<?> tClass) {
+        String column = new Reflect<>(tClass).getExpiryColumn();
+        if (column == null) {
+            throw new IllegalArgumentException(tClass.getSimpleName() + " has no @Expiry column");
+        }
+        return pass(tClass, column);
+    }
+
+
+    PurgeStats stats() {
+        return new PurgeStats(rows.sum(), passes.sum(), contentions.sum(), failures.sum(), lagMillis.get(), batchSize);
+    }
+
+
+    void close() {
+        Optional.ofNullable(scheduler).ifPresent(ScheduledExecutorService::shutdownNow);
+    }
+
+
+    private void run() {
+        for (Class<?> tClass : classes) {
+            try {
+                pass(tClass, new Reflect<>(tClass).getExpiryColumn());
+            } catch (RuntimeException e) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+                failures.increment();
+            }
+        }
+    }
+
+
+    private synchronized long pass(Class<?> tClass, String column) {
+        long now = System.currentTimeMillis();
+        List<String> list = tables.apply(tClass);
+        long lag = 0;
+        for (String table : list) {
+            lag = Math.max(lag, lag(table, column, now));
+        }
+        lagMillis.set(lag);
+        long total = 0;
+        for (String table : list) {
+            total += drain(table, column, now);
+        }
+        passes.increment();
+        return total;
+    }
+
+
+    private long drain(String table, String column, long now) {
+        long total = 0;
+        int retries = 0;
+        while (true) {
+            int batch = batchSize;
+            long start = System.nanoTime();
+            int deleted;
+            try {
+                deleted = runner.executeUpdate(SQLTemplate.purge(table, column, now, batch, config));
+            } catch (RuntimeException e) {
+                if (!contended(e) || ++retries > MAX_RETRIES) {
+                    throw e;
+                }
+                contentions.increment();
+                batchSize = Math.max(MIN_BATCH_SIZE, batch / 2);
+                pause(config.purgeTargetMillis << retries);
+                continue;
+            }
+            long elapsed = (System.nanoTime() - start) / 1_000_000;
+            retries = 0;
+            total += deleted;
+            rows.add(deleted);
+            if (elapsed > config.purgeTargetMillis) {
+                batchSize = Math.max(MIN_BATCH_SIZE, batch / 2);
+            } else if (elapsed * 2 < config.purgeTargetMillis && deleted == batch) {
+                batchSize = Math.min(Math.max(MIN_BATCH_SIZE, config.purgeBatchSize), batch * 2);
+            }
+            if (deleted < batch) {
+                return total;
+            }
+            pause(Math.max(1, elapsed));
+        }
+    }
+
+
+    private long lag(String table, String column, long now) {
+        Options options = new Options().select(String.format("min(%s)", column)).where(String.format("%s < %d", column, now));
+        long oldest = runner.onPrimary(() -> runner.executeQuery(SQLTemplate.query(table, options), set -> set.next() ? set.getLong(1) : 0L));
+        return (oldest > 0) ? now - oldest : 0;
+    }
+
+
+    private static boolean contended(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLException) {
+                SQLException exception = (SQLException) cause;
+                int code = exception.getErrorCode();
+                if (code == 5 || code == 6 || code == 1205 || code == 1213 || "40001".equals(exception.getSQLState())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+
+    private static void pause(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+}
@@ -0,0 +1,248 @@
+/**
+ * Copyright 2023 Zhang Guanhu
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.artbits.orm;
+
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+public final class Query<T> {
+
+    private final Core core;
+    private final ShardedCore shards;
+    private final Class<T> tClass;
+    private final String sql;
+    private final String scatterSql;
+    private final Options window;
+    private final boolean limitParameter;
+    private final boolean offsetParameter;
+    private final boolean partial;
+    private final int parameters;
+    private volatile Mapper<T> mapper;
+
+
+    private Query(Builder<T> builder, String sql, String scatterSql, Options window) {
+        this.core = builder.core;
+        this.shards = builder.shards;
+        this.tClass = builder.tClass;
+        this.limitParameter = builder.limitParameter;
+        this.offsetParameter = builder.offsetParameter;
+        this.partial = builder.options.selectColumns != null;
+        this.sql = sql;
+        this.scatterSql = scatterSql;
+        this.window = window;
+        int count = 0;
+        for (int i = 0; i < sql.length(); i++) {
+            if (sql.charAt(i) == '?') {
+                count++;
+            }
+        }
+        this.parameters = count;
+    }
+
+
+    public List<T> list(Object... args) {
+        if (shards != null) {
+            return scatter(check(args));
+        }
+        return list(core, sql, check(args));
+    }
+
+
+    public T one(Object... args) {
+        if (shards != null) {
+            List<T> list = scatter(check(args));
+            return (!list.isEmpty()) ? list.get(0) : null;
+        }
+        return core.runner().executePrepared(sql, check(args), set -> set.next() ? core.attach(mapper(set).map(set), partial) : null);
+    }
+
+
+    public Stream<T> stream(Object... args) {
+        if (shards != null) {
+            return scatter(check(args)).stream();
+        }
+        return core.runner().streamPrepared(sql, check(args)).map(set -> core.attach(mapper(set).map(set), partial));
+    }
+
+
+    public String sql() {
+        return sql;
+    }
+
+
+    @Override
+    public String toString() {
+        return sql;
+    }
+
+
+    private List<T> list(Core core, String sql, Object[] args) {
+        return core.runner().executePrepared(sql, args, set -> {
+            List<T> list = new ArrayList<>();
+            while (set.next()) {
+                list.add(core.attach(mapper(set).map(set), partial));
+            }
+            return list;
+        });
+    }
+
+
+    private List<T> scatter(Object[] args) {
+        int fixed = args.length - (limitParameter ? 1 : 0) - (offsetParameter ? 1 : 0);
+        Options window = this.window.copy();
+        if (limitParameter) {
+            window.limitSize = ((Number) args[fixed]).longValue();
+        }
+        if (offsetParameter) {
+            window.offsetSize = ((Number) args[args.length - 1]).longValue();
+        }
+        Object[] shardArgs = Arrays.copyOf(args, (window.limitSize != null) ? fixed + 1 : fixed);
+        if (window.limitSize != null) {
+            shardArgs[fixed] = window.limitSize + ((window.offsetSize != null) ? window.offsetSize : 0);
+        }
+        return Merger.merge(shards.scatter(shard -> list(shard, scatterSql, shardArgs)), window);
+    }
+
+
+    private Object[] check(Object[] args) {
+        if (args.length != parameters) {
+            throw new IllegalArgumentException(String.format("Expected %d arguments but got %d", parameters, args.length));
+        }
+        return args;
+    }
+
+
+    private Mapper<T> mapper(ResultSet set) {
+        Mapper<T> mapper = this.mapper;
+        if (mapper == null) {
+            try {
+                mapper = new Mapper<>(tClass, set.getMetaData());
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+            this.mapper = mapper;
+        }
+        return mapper;
+    }
+
+
+    public static final class Builder<T> {
+
+        private final Core core;
+        private final ShardedCore shards;
+        private final Class<T> tClass;
+        private final Options options = new Options();
+        private boolean limitParameter;
+        private boolean offsetParameter;
+
+
+        Builder(Core core, ShardedCore shards, Class<T> tClass) {
+            this.core = core;
+            this.shards = shards;
+            this.tClass = tClass;
+        }
+
+
+        public Builder<T> select(String... columns) {
+            options.select(columns);
+            return this;
+        }
+
+
+        public Builder<T> where(String predicate) {
+            options.where(predicate);
+            return this;
+        }
+
+
+        public Builder<T> order(String columns, String mode) {
+            options.order(columns, mode);
+            return this;
+        }
+
+
+        public Builder<T> order(String columns) {
+            options.order(columns);
+            return this;
+        }
+
+
+        public Builder<T> limit(long size) {
+            options.limit(size);
+            limitParameter = false;
+            return this;
+        }
+
+
+        public Builder<T> limit() {
+            options.limitSize = null;
+            limitParameter = true;
+            return this;
+        }
+
+
+        public Builder<T> offset(long size) {
+            options.offset(size);
+            offsetParameter = false;
+            return this;
+        }
+
+
+        public Builder<T> offset() {
+            options.offsetSize = null;
+            offsetParameter = true;
+            return this;
+        }
+
+
+        public Query<T> compile() {
+            Options copy = options.copy();
+            copy.limitSize = null;
+            copy.offsetSize = null;
+            String base = SQLTemplate.query(tClass, copy);
+            String sql = SQLTemplate.query(tClass, options);
+            if (limitParameter || offsetParameter) {
+                StringBuilder builder = new StringBuilder(base).deleteCharAt(base.length() - 1);
+                if (limitParameter || options.limitSize != null) {
+                    builder.append(" limit ").append(limitParameter ? "?" : String.valueOf(options.limitSize));
+                }
+                if (offsetParameter || options.offsetSize != null) {
+                    builder.append(" offset ").append(offsetParameter ? "?" : String.valueOf(options.offsetSize));
+                }
+                sql = builder.append(";").toString();
+            }
+            if (shards == null) {
+                return new Query<>(this, sql, null, null);
+            }
+            if (options.groupColumns != null) {
+                throw new IllegalArgumentException("Grouped queries are not supported across shards, use aggregateGroup");
+            }
+            boolean limited = limitParameter || options.limitSize != null;
+            String scatterSql = limited ? new StringBuilder(base).deleteCharAt(base.length() - 1).append(" limit ?;").toString() : base;
+            Options window = new Options();
+            window.orderColumns = options.orderColumns;
+            window.limitSize = options.limitSize;
+            window.offsetSize = options.offsetSize;
+            return new Query<>(this, sql, scatterSql, window);
+        }
+
+    }
+
+}
@@ -19,42 +19,63 @@ package com.github.artbits.orm;
 import java.lang.reflect.Field;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 final class Reflect<T> {
 
-    private final Map<String, Field> fieldMap = new LinkedHashMap<>();
+    private final static ClassValue<Map<String, Field>> FIELDS = new ClassValue<Map<String, Field>>() {
+        @Override
+        protected Map<String, Field> computeValue(Class<?> type) {
+            Map<String, Field> fieldMap = new LinkedHashMap<>();
+            Class<?> clazz = type;
+            while (clazz != null){
+                for (Field field : clazz.getDeclaredFields()) {
+                    field.setAccessible(true);
+                    if (!isIgnore(field) && !Relations.isRelation(field)) {
+                        fieldMap.put(field.getName(), field);
+                    }
+                }
+                clazz = clazz.getSuperclass();
+            }
+            return Collections.unmodifiableMap(fieldMap);
+        }
+    };
+
+    private final static ClassValue<String> DEFAULT_COLUMNS = new ClassValue<String>() {
+        @Override
+        protected String computeValue(Class<?> type) {
+            Collection<Field> fields = FIELDS.get(type).values();
+            if (fields.stream().noneMatch(Reflect::isLazy)) {
+                return null;
+            }
+            return fields.stream().filter(field -> !isLazy(field)).map(Field::getName).collect(Collectors.joining(", "));
+        }
+    };
+
+    private final Map<String, Field> fieldMap;
     private Class<?> tClass;
     private T t;
 
     Reflect(Class<?> tClass) {
         this.tClass = tClass;
-        newInstance(tClass);
+        this.fieldMap = FIELDS.get(tClass);
     }
 
 
     Reflect(T t) {
         this.t = t;
-        newInstance(t.getClass());
-    }
-
-
-    private void newInstance(Class<?> tClass) {
-        Class<?> clazz = tClass;
-        while (clazz != null){
-            for (Field field : clazz.getDeclaredFields()) {
-                field.setAccessible(true);
-                if (!isIgnore(field)) {
-                    fieldMap.put(field.getName(), field);
-                }
-            }
-            clazz = clazz.getSuperclass();
-        }
+        this.tClass = t.getClass();
+        this.fieldMap = FIELDS.get(tClass);
     }
 
 
@@ -80,6 +101,41 @@ final class Reflect<T> {
     }
 
 
+    Field getField(String fieldName) {
+        return fieldMap.get(fieldName);
+    }
+
+
+    boolean isCompressed(String fieldName) {
+        Field field = fieldMap.get(fieldName);
+        return field != null && Compression.isCompressed(field);
+    }
+
+
+    boolean hasField(String fieldName) {
+        return fieldMap.containsKey(fieldName);
+    }
+
+
+    Object[] getValues() {
+        try {
+            Object[] values = new Object[fieldMap.size()];
+            int i = 0;
+            for (Field field : fieldMap.values()) {
+                values[i++] = field.get(t);
+            }
+            return values;
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+
+    Collection<String> getNames() {
+        return fieldMap.keySet();
+    }
+
+
     Class<?> getType(String fieldName) {
         Field field = fieldMap.getOrDefault(fieldName, null);
         return field.getType();
@@ -87,6 +143,12 @@ final class Reflect<T> {
 
 
     String getDatabaseType(String fieldName) {
+        if (isCompressed(fieldName)) {
+            if (getType(fieldName) != String.class) {
+                throw new IllegalArgumentException("Only String fields can be compressed: " + fieldName);
+            }
+            return "blob";
+        }
         switch (getType(fieldName).getSimpleName().toLowerCase()) {
             case "int":
             case "integer":
@@ -109,6 +171,9 @@ final class Reflect<T> {
             String fieldName = field.getName();
             Field dbField = fieldMap.getOrDefault(fieldName, null);
             Object dbValue = (dbField != null) ? dbField.get(t) : null;
+            if (dbField != null && dbValue != null && Compression.isCompressed(dbField)) {
+                return Compression.encode(dbField, (String) dbValue);
+            }
             if (dbField != null && dbValue != null) {
                 switch (getDatabaseType(fieldName)) {
                     case "text": return String.format("'%s'", dbValue);
@@ -123,6 +188,20 @@ final class Reflect<T> {
     }
 
 
+    Object getDBParameter(Field field) {
+        try {
+            Field dbField = fieldMap.getOrDefault(field.getName(), null);
+            Object dbValue = (dbField != null) ? dbField.get(t) : null;
+            if (dbValue != null && Compression.isCompressed(dbField)) {
+                return Compression.encode(dbField, (String) dbValue);
+            }
+            return dbValue;
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+
     void getDBColumnsWithValue(BiConsumer<String, Object> consumer) {
         for (Field field : fieldMap.values()) {
             consumer.accept(field.getName(), getDBValue(field));
@@ -130,6 +209,13 @@ final class Reflect<T> {
     }
 
 
+    void getDBColumnsWithParameter(BiConsumer<String, Object> consumer) {
+        for (Field field : fieldMap.values()) {
+            consumer.accept(field.getName(), getDBParameter(field));
+        }
+    }
+
+
     void getDBColumnsWithType(BiConsumer<String, String> consumer) {
         for (Field field : fieldMap.values()) {
             consumer.accept(field.getName(), getDatabaseType(field.getName()));
@@ -137,15 +223,73 @@ final class Reflect<T> {
     }
 
 
-    void getIndexList(BiConsumer<String, String> consumer) {
-        String table = tClass.getSimpleName().toLowerCase();
+    List<IndexDefinition> getIndexList() {
+        return getIndexList(tClass.getSimpleName().toLowerCase());
+    }
+
+
+    List<IndexDefinition> getIndexList(String table) {
+        List<IndexDefinition> list = new ArrayList<>();
+        fieldMap.values().forEach(field -> {
+            if (isIndex(field) || isExpiry(field)) {
+                list.add(new IndexDefinition(table, field.getName(), isUnique(field)));
+            }
+        });
+        for (Index index : tClass.getAnnotationsByType(Index.class)) {
+            list.add(new IndexDefinition(table, index));
+        }
+        List<String> fulltextColumns = getFulltextColumns();
+        if (!fulltextColumns.isEmpty()) {
+            list.add(new IndexDefinition(table, fulltextColumns));
+        }
+        return list;
+    }
+
+
+    List<String> getFulltextColumns() {
+        List<String> list = new ArrayList<>();
         fieldMap.values().forEach(field -> {
-            if (isIndex(field)) {
-                String column = field.getName();
-                String index = String.format("idx_%s_%s", table, column);
-                consumer.accept(index, column);
+            if (isFulltext(field)) {
+                if (Compression.isCompressed(field)) {
+                    throw new IllegalArgumentException("Compressed fields can't be full-text indexed: " + field.getName());
+                }
+                list.add(field.getName());
             }
         });
+        return list;
+    }
+
+
+    boolean isUnique(String fieldName) {
+        Field field = fieldMap.getOrDefault(fieldName, null);
+        return field != null && isUnique(field);
+    }
+
+
+    String getExpiryColumn() {
+        String column = null;
+        for (Field field : fieldMap.values()) {
+            if (isExpiry(field)) {
+                if (column != null) {
+                    throw new IllegalArgumentException("Only one @Expiry field is allowed: " + tClass.getSimpleName());
+                }
+                if (!Objects.equals(getDatabaseType(field.getName()), "integer")) {
+                    throw new IllegalArgumentException("Expiry field must be an integer field holding epoch millis: " + field.getName());
+                }
+                column = field.getName();
+            }
+        }
+        return column;
+    }
+
+
+    String getUniqueColumn() {
+        for (Field field : fieldMap.values()) {
+            if (isUnique(field)) {
+                return field.getName();
+            }
+        }
+        return "id";
     }
 
 
@@ -193,7 +337,11 @@ final class Reflect<T> {
                     case "char":
                     case "character":
                     case "string":
-                        reflect.setValue(name, resultSet.getString(name));
+                        if (Compression.isCompressed(field)) {
+                            reflect.setValue(name, Compression.decode(field, resultSet.getBytes(name)));
+                        } else {
+                            reflect.setValue(name, resultSet.getString(name));
+                        }
                         break;
                     case "boolean" :
                         reflect.setValue(name, resultSet.getBoolean(name));
@@ -216,10 +364,47 @@ final class Reflect<T> {
     }
 
 
+    static boolean isLazy(Field field) {
+        if (field.isAnnotationPresent(Column.class)) {
+            Column column = field.getAnnotation(Column.class);
+            return column.lazy();
+        }
+        return false;
+    }
+
+
+    static String getDefaultColumns(Class<?> tClass) {
+        return DEFAULT_COLUMNS.get(tClass);
+    }
+
+
+    static boolean isFulltext(Field field) {
+        if (field.isAnnotationPresent(Column.class)) {
+            Column column = field.getAnnotation(Column.class);
+            return column.fulltext();
+        }
+        return false;
+    }
+
+
     static boolean isIndex(Field field) {
         if (field.isAnnotationPresent(Column.class)) {
             Column column = field.getAnnotation(Column.class);
-            return column.index();
+            return column.index() || column.unique();
+        }
+        return false;
+    }
+
+
+    static boolean isExpiry(Field field) {
+        return field.isAnnotationPresent(Expiry.class);
+    }
+
+
+    static boolean isUnique(Field field) {
+        if (field.isAnnotationPresent(Column.class)) {
+            Column column = field.getAnnotation(Column.class);
+            return column.unique();
         }
         return false;
     }
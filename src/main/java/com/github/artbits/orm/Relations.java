@@ -0,0 +1,128 @@
+/**
+ * Copyright 2023 Zhang Guanhu
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.artbits.orm;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.ParameterizedType;
+import java.util.*;
+import java.util.function.BiFunction;
+
+final class Relations {
+
+    private final static int CHUNK_SIZE = 500;
+
+    private final static ClassValue<Map<String, Field>> RELATIONS = new ClassValue<Map<String, Field>>() {
+        @Override
+        protected Map<String, Field> computeValue(Class<?> type) {
+            Map<String, Field> fieldMap = new LinkedHashMap<>();
+            for (Class<?> clazz = type; clazz != null; clazz = clazz.getSuperclass()) {
+                for (Field field : clazz.getDeclaredFields()) {
+                    if (isRelation(field)) {
+                        field.setAccessible(true);
+                        fieldMap.put(field.getName(), field);
+                    }
+                }
+            }
+            return Collections.unmodifiableMap(fieldMap);
+        }
+    };
+
+
+    static boolean isRelation(Field field) {
+        return field.isAnnotationPresent(ToOne.class) || field.isAnnotationPresent(ToMany.class);
+    }
+
+
+    static <T> void include(List<T> parents, String[] names, BiFunction<Class<?>, Options, List<?>> loader) {
+        if (parents.isEmpty() || names == null) {
+            return;
+        }
+        Map<String, Field> relations = RELATIONS.get(parents.get(0).getClass());
+        for (String name : names) {
+            Field field = relations.get(name.trim());
+            if (field == null) {
+                throw new IllegalArgumentException("No relation named " + name);
+            }
+            try {
+                if (field.isAnnotationPresent(ToOne.class)) {
+                    toOne(parents, field, field.getAnnotation(ToOne.class).key(), loader);
+                } else {
+                    toMany(parents, field, field.getAnnotation(ToMany.class).key(), loader);
+                }
+            } catch (IllegalAccessException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+
+    private static <T> void toOne(List<T> parents, Field field, String key, BiFunction<Class<?>, Options, List<?>> loader) throws IllegalAccessException {
+        Set<Object> keys = new LinkedHashSet<>();
+        for (T parent : parents) {
+            Optional.ofNullable(new Reflect<>(parent).getValue(key)).ifPresent(keys::add);
+        }
+        Map<Object, Object> targets = new HashMap<>();
+        for (Object target : fetch(field.getType(), "id", keys, loader)) {
+            targets.put(normalize(new Reflect<>(target).getValue("id")), target);
+        }
+        for (T parent : parents) {
+            Object id = new Reflect<>(parent).getValue(key);
+            field.set(parent, (id != null) ? targets.get(normalize(id)) : null);
+        }
+    }
+
+
+    private static <T> void toMany(List<T> parents, Field field, String key, BiFunction<Class<?>, Options, List<?>> loader) throws IllegalAccessException {
+        Class<?> childClass = (Class<?>) ((ParameterizedType) field.getGenericType()).getActualTypeArguments()[0];
+        Set<Object> ids = new LinkedHashSet<>();
+        for (T parent : parents) {
+            Optional.ofNullable(new Reflect<>(parent).getValue("id")).ifPresent(ids::add);
+        }
+        Map<Object, List<Object>> children = new HashMap<>();
+        for (Object child : fetch(childClass, key, ids, loader)) {
+            Object parentId = normalize(new Reflect<>(child).getValue(key));
+            children.computeIfAbsent(parentId, k -> new ArrayList<>()).add(child);
+        }
+        for (T parent : parents) {
+            Object id = new Reflect<>(parent).getValue("id");
+            field.set(parent, children.getOrDefault((id != null) ? normalize(id) : null, new ArrayList<>()));
+        }
+    }
+
+
+    private static List<Object> fetch(Class<?> tClass, String column, Collection<Object> keys, BiFunction<Class<?>, Options, List<?>> loader) {
+        List<Object> list = new ArrayList<>();
+        List<Object> all = new ArrayList<>(keys);
+        for (int i = 0; i < all.size(); i += CHUNK_SIZE) {
+            StringBuilder builder = new StringBuilder();
+            for (Object key : all.subList(i, Math.min(all.size(), i + CHUNK_SIZE))) {
+                builder.append((builder.length() > 0) ? "," : "");
+                builder.append((key instanceof Number) ? key.toString() : String.format("'%s'", key));
+            }
+            Options options = new Options();
+            options.wherePredicate = String.format("%s in(%s)", column, builder);
+            list.addAll(loader.apply(tClass, options));
+        }
+        return list;
+    }
+
+
+    private static Object normalize(Object key) {
+        return (key instanceof Number && !(key instanceof Double || key instanceof Float)) ? ((Number) key).longValue() : key;
+    }
+
+}
@@ -23,30 +23,52 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 class Runner {
 
-    private final BasicDataSource source = new BasicDataSource();
+    private final BasicDataSource source;
+    private final List<BasicDataSource> replicas = new ArrayList<>();
+    private final AtomicInteger nextReplica = new AtomicInteger();
+    private final ThreadLocal<int[]> primaryScope = ThreadLocal.withInitial(() -> new int[1]);
+    private final ThreadLocal<long[]> lastWrite = ThreadLocal.withInitial(() -> new long[1]);
     private final Config config;
+    final Advisor advisor;
 
 
     Runner(Config config) {
         try {
             this.config = config;
             Class.forName(config.driver);
-            Optional.ofNullable(config.url).ifPresent(source::setUrl);
-            Optional.ofNullable(config.username).ifPresent(source::setUsername);
-            Optional.ofNullable(config.password).ifPresent(source::setPassword);
-            source.setInitialSize(config.initSize);
-            source.setMaxTotal(config.maxSize);
-            source.setMinIdle(config.minIdle);
-            source.setMaxIdle(config.maxIdle);
+            source = dataSource(config.url);
+            for (String url : config.replicas) {
+                replicas.add(dataSource(url));
+            }
+            advisor = new Advisor(config.advisor ? config.advisorSampleRate : 0, this::explain);
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
     }
 
 
+    private BasicDataSource dataSource(String url) {
+        BasicDataSource source = new BasicDataSource();
+        Optional.ofNullable(url).ifPresent(source::setUrl);
+        Optional.ofNullable(config.username).ifPresent(source::setUsername);
+        Optional.ofNullable(config.password).ifPresent(source::setPassword);
+        source.setInitialSize(config.initSize);
+        source.setMaxTotal(config.maxSize);
+        source.setMinIdle(config.minIdle);
+        source.setMaxIdle(config.maxIdle);
+        return source;
+    }
+
+
     Connection connection() {
         try {
             return source.getConnection();
@@ -56,17 +78,67 @@ class Runner {
     }
 
 
+    Connection readConnection() {
+        if (replicas.isEmpty() || primaryScope.get()[0] > 0) {
+            return connection();
+        }
+        if (config.readYourWritesMillis > 0 && System.currentTimeMillis() - lastWrite.get()[0] < config.readYourWritesMillis) {
+            return connection();
+        }
+        BasicDataSource replica;
+        if (Objects.equals(config.routing, Config.Routing.LEAST_OUTSTANDING)) {
+            replica = replicas.get(0);
+            for (BasicDataSource candidate : replicas) {
+                if (candidate.getNumActive() < replica.getNumActive()) {
+                    replica = candidate;
+                }
+            }
+        } else {
+            replica = replicas.get(Math.floorMod(nextReplica.getAndIncrement(), replicas.size()));
+        }
+        try {
+            return replica.getConnection();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+
+    <Y> Y onPrimary(Supplier<Y> supplier) {
+        int[] depth = primaryScope.get();
+        depth[0]++;
+        try {
+            return supplier.get();
+        } finally {
+            depth[0]--;
+        }
+    }
+
+
+    private void written() {
+        if (config.readYourWritesMillis > 0 && !replicas.isEmpty()) {
+            lastWrite.get()[0] = System.currentTimeMillis();
+        }
+    }
+
+
     void close() {
         try {
+            advisor.close();
             source.close();
+            for (BasicDataSource replica : replicas) {
+                replica.close();
+            }
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
     }
 
 
-    long insert(String sql) {
+    long insert(String sql, Object[] args) {
+        written();
         try (Connection connection = connection(); PreparedStatement statement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            bind(statement, args);
             if (statement.executeUpdate() == 0) {
                 return -1;
             }
@@ -108,28 +180,172 @@ class Runner {
 
 
     <Y> Y executeQuery(String sql, Function<ResultSet, Y> function) {
-        try (Connection connection = connection(); Statement statement = connection.createStatement(); ResultSet set = statement.executeQuery(sql)) {
+        long start = advisor.sample() ? System.nanoTime() : 0;
+        try (Connection connection = readConnection(); Statement statement = connection.createStatement(); ResultSet set = statement.executeQuery(sql)) {
             return function.on(set);
         } catch (Exception e) {
             throw new RuntimeException(e);
+        } finally {
+            record(sql, start);
         }
     }
 
 
-    void executeUpdate(String sql) {
-        try (Connection connection = connection(); Statement statement = connection.createStatement()) {
-            statement.executeUpdate(sql);
+    Plan explain(String sql) {
+        return executeQuery(Plan.explain(sql, config), set -> Plan.of(sql, config, set));
+    }
+
+
+    <Y> Y executePrepared(String sql, Object[] args, Function<ResultSet, Y> function) {
+        long start = advisor.sample() ? System.nanoTime() : 0;
+        try (Connection connection = readConnection(); PreparedStatement statement = connection.prepareStatement(sql)) {
+            bind(statement, args);
+            try (ResultSet set = statement.executeQuery()) {
+                return function.on(set);
+            }
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        } finally {
+            record(sql, start);
+        }
+    }
+
+
+    Stream<ResultSet> streamPrepared(String sql, Object[] args) {
+        Connection connection = readConnection();
+        try {
+            PreparedStatement statement = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(Objects.equals(config.driver, Config.Driver.MYSQL) ? Integer.MIN_VALUE : 1000);
+            bind(statement, args);
+            ResultSet set = statement.executeQuery();
+            Spliterator<ResultSet> spliterator = new Spliterators.AbstractSpliterator<ResultSet>(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+                @Override
+                public boolean tryAdvance(java.util.function.Consumer<? super ResultSet> action) {
+                    try {
+                        if (!set.next()) {
+                            return false;
+                        }
+                        action.accept(set);
+                        return true;
+                    } catch (SQLException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            };
+            return StreamSupport.stream(spliterator, false).onClose(() -> {
+                try {
+                    set.close();
+                    statement.close();
+                    connection.close();
+                } catch (SQLException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+        } catch (Exception e) {
+            try {
+                connection.close();
+            } catch (SQLException ignored) {
+            }
+            throw new RuntimeException(e);
+        }
+    }
+
+
+    <Y> Y executeStreamQuery(String sql, Function<ResultSet, Y> function) {
+        long start = advisor.sample() ? System.nanoTime() : 0;
+        try (Connection connection = readConnection();
+             Statement statement = connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            statement.setFetchSize(Objects.equals(config.driver, Config.Driver.MYSQL) ? Integer.MIN_VALUE : 1000);
+            try (ResultSet set = statement.executeQuery(sql)) {
+                return function.on(set);
+            }
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        } finally {
+            record(sql, start);
+        }
+    }
+
+
+    <Y> Y executeTransaction(Function<Connection, Y> function) {
+        return executeConnection(connection -> transaction(connection, function));
+    }
+
+
+    <Y> Y executeConnection(Function<Connection, Y> function) {
+        written();
+        try (Connection connection = connection()) {
+            return function.on(connection);
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
     }
 
 
-    void executeUpdate(String sql, Function<Void, Void> function) {
+    <Y> Y transaction(Connection connection, Function<Connection, Y> function) throws Exception {
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        primaryScope.get()[0]++;
+        try {
+            Y y = function.on(connection);
+            connection.commit();
+            return y;
+        } catch (Exception e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            primaryScope.get()[0]--;
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+
+    int executeUpdate(String sql) {
+        written();
+        long start = advisor.sample() ? System.nanoTime() : 0;
         try (Connection connection = connection(); Statement statement = connection.createStatement()) {
-            statement.executeUpdate(sql);
+            return statement.executeUpdate(sql);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        } finally {
+            record(sql, start);
+        }
+    }
+
+
+    int executeUpdate(String sql, Object[] args) {
+        written();
+        long start = advisor.sample() ? System.nanoTime() : 0;
+        try (Connection connection = connection(); PreparedStatement statement = connection.prepareStatement(sql)) {
+            bind(statement, args);
+            return statement.executeUpdate();
         } catch (Exception e) {
             throw new RuntimeException(e);
+        } finally {
+            record(sql, start);
+        }
+    }
+
+
+    static void bind(PreparedStatement statement, Object[] args) throws SQLException {
+        for (int i = 0; i < args.length; i++) {
+            Object arg = args[i];
+            if (arg == null) {
+                statement.setNull(i + 1, Types.NULL);
+            } else if (arg instanceof Boolean) {
+                statement.setInt(i + 1, ((Boolean) arg) ? 1 : 0);
+            } else if (arg instanceof Character) {
+                statement.setString(i + 1, arg.toString());
+            } else {
+                statement.setObject(i + 1, arg);
+            }
+        }
+    }
+
+
+    private void record(String sql, long start) {
+        if (start != 0) {
+            advisor.record(sql, System.nanoTime() - start);
         }
     }
 
@@ -16,12 +16,27 @@
 
 package com.github.artbits.orm;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 final class SQLTemplate {
 
+    final static String SCHEMA_TABLE = "orm_schema";
+    final static String SEQUENCE_TABLE = "orm_sequence";
+
+
     static <T> String create(Class<T> tClass, Config config) {
+        return create(tClass, tClass.getSimpleName().toLowerCase(), config);
+    }
+
+
+    static <T> String create(Class<T> tClass, String tableName, Config config) {
         StringBuffer columnsString = new StringBuffer();
         if (Objects.equals(config.driver, Config.Driver.SQLITE)) {
             columnsString.append("id integer primary key autoincrement,");
@@ -29,51 +44,117 @@ final class SQLTemplate {
         if (Objects.equals(config.driver, Config.Driver.MYSQL)) {
             columnsString.append("id int primary key auto_increment,");
         }
-        new Reflect<>(tClass).getDBColumnsWithType((column, type) -> {
+        Reflect<T> reflect = new Reflect<>(tClass);
+        reflect.getDBColumnsWithType((column, type) -> {
             if (!Objects.equals(column, "id")) {
-                columnsString.append(column).append(" ").append(type).append(",");
+                columnsString.append(column).append(" ").append(columnType(reflect, column, type, config)).append(",");
             }
         });
         columnsString.deleteCharAt(columnsString.length() - 1);
-        String tableName = tClass.getSimpleName().toLowerCase();
         return $("create table if not exists %s (%s);", tableName, columnsString);
     }
 
 
-    static <T> String addColumn(Class<T> tClass, String column, String type) {
-        String tableName = tClass.getSimpleName().toLowerCase();
-        return $("alter table %s add column %s %s;", tableName, column, type);
+    static <T> String addColumn(Class<T> tClass, String tableName, String column, String type, Config config) {
+        return $("alter table %s add column %s %s;", tableName, column, columnType(new Reflect<>(tClass), column, type, config));
+    }
+
+
+    private static String columnType(Reflect<?> reflect, String column, String type, Config config) {
+        boolean mysql = Objects.equals(config.driver, Config.Driver.MYSQL);
+        return (mysql && reflect.isCompressed(column)) ? "longblob" : type;
     }
 
 
     static <T> String drop(Class<T> tClass) {
-        return $("drop table if exists %s;", tClass.getSimpleName().toLowerCase());
+        return drop(tClass.getSimpleName().toLowerCase());
+    }
+
+
+    static String drop(String tableName) {
+        return $("drop table if exists %s;", tableName);
     }
 
 
-    static <T> String insert(T t) {
+    static <T> String insert(T t, String tableName, boolean presetId, List<Object> parameters) {
         StringBuffer columnsString = new StringBuffer();
         StringBuffer valueString = new StringBuffer();
         new Reflect<>(t).getDBColumnsWithValue((column, value) -> {
-            if (!Objects.equals(column, "id")) {
+            if (!Objects.equals(column, "id") || (presetId && value != null)) {
                 columnsString.append(column).append(",");
-                valueString.append(value).append(",");
+                valueString.append(bind(value, parameters)).append(",");
             }
         });
         columnsString.deleteCharAt(columnsString.length() - 1);
         valueString.deleteCharAt(valueString.length() - 1);
-        String tableName = t.getClass().getSimpleName().toLowerCase();
         return $("insert into %s (%s) values (%s);", tableName, columnsString, valueString);
     }
 
 
-    static <T> String update(T t, Options options) {
-        String tableName = t.getClass().getSimpleName().toLowerCase();
+    static <T> String insertAll(Class<T> tClass, String tableName) {
+        return values(tClass, tableName);
+    }
+
+
+    static <T> String upsert(Class<T> tClass, String tableName, Config config) {
+        Reflect<?> reflect = new Reflect<>(tClass);
+        String key = reflect.getUniqueColumn();
+        StringBuffer updateString = new StringBuffer();
+        boolean sqlite = Objects.equals(config.driver, Config.Driver.SQLITE);
+        reflect.getDBColumnsWithType((column, type) -> {
+            if (!Objects.equals(column, "id") && !Objects.equals(column, key)) {
+                if (Reflect.isLazy(reflect.getField(column))) {
+                    String format = sqlite ? "%s = coalesce(excluded.%s, %s)," : "%s = coalesce(values(%s), %s),";
+                    updateString.append($(format, column, column, column));
+                } else {
+                    String format = sqlite ? "%s = excluded.%s," : "%s = values(%s),";
+                    updateString.append($(format, column, column));
+                }
+            }
+        });
+        String insertString = values(tClass, tableName);
+        if (updateString.length() == 0) {
+            return sqlite ? $("%s on conflict(%s) do nothing", insertString, key) : $("%s on duplicate key update %s = %s", insertString, key, key);
+        }
+        updateString.deleteCharAt(updateString.length() - 1);
+        if (sqlite) {
+            return $("%s on conflict(%s) do update set %s", insertString, key, updateString);
+        } else {
+            return $("%s on duplicate key update %s", insertString, updateString);
+        }
+    }
+
+
+    static <T> Object[] parameters(T t) {
+        List<Object> parameters = new ArrayList<>();
+        new Reflect<>(t).getDBColumnsWithParameter((column, value) -> parameters.add(value));
+        return parameters.toArray();
+    }
+
+
+    private static Object bind(Object value, List<Object> parameters) {
+        if (value instanceof byte[]) {
+            parameters.add(value);
+            return "?";
+        }
+        return value;
+    }
+
+
+    private static <T> String values(Class<T> tClass, String tableName) {
+        List<String> columns = new ArrayList<>();
+        new Reflect<>(tClass).getDBColumnsWithType((column, type) -> columns.add(column));
+        return $("insert into %s (%s) values (%s)", tableName, String.join(",", columns), String.join(",", Collections.nCopies(columns.size(), "?")));
+    }
+
+
+    static <T> String update(T t, String tableName, Options options, Set<String> columns, List<Object> parameters) {
         String whereString = (options.wherePredicate != null) ? $("where %s ", options.wherePredicate) : "";
         StringBuffer setString = new StringBuffer();
         new Reflect<>(t).getDBColumnsWithValue((column, value) -> {
-            if (value != null && !Objects.equals(column, "id")) {
-                setString.append(column).append(" = ").append(value).append(",");
+            boolean selected = (columns != null) ? columns.contains(column) : value != null;
+            if (selected && !Objects.equals(column, "id")) {
+                setString.append(column).append(" = ").append(bind(value, parameters)).append(",");
             }
         });
         setString.deleteCharAt(setString.length() - 1);
@@ -88,7 +169,20 @@ final class SQLTemplate {
 
 
     static <T> String delete(Class<T> tClass, Options options) {
-        String deleteString = $("delete from %s ", tClass.getSimpleName().toLowerCase());
+        return delete(tClass.getSimpleName().toLowerCase(), options);
+    }
+
+
+    static String purge(String tableName, String column, long now, int limit, Config config) {
+        if (Objects.equals(config.driver, Config.Driver.MYSQL)) {
+            return $("delete from %s where %s < %d order by %s limit %d;", tableName, column, now, column, limit);
+        }
+        return $("delete from %s where id in (select id from %s where %s < %d order by %s limit %d);", tableName, tableName, column, now, column, limit);
+    }
+
+
+    static String delete(String tableName, Options options) {
+        String deleteString = $("delete from %s ", tableName);
         String whereString = (options.wherePredicate != null) ? $("where %s ", options.wherePredicate) : "";
         StringBuilder SQLBuilder = new StringBuilder();
         return SQLBuilder
@@ -127,14 +221,142 @@ final class SQLTemplate {
 
 
     static <T> String query(Class<T> tClass, Options options) {
+        return query(tClass, tClass.getSimpleName().toLowerCase(), options);
+    }
+
+
+    static <T> String query(Class<T> tClass, String tableName, Options options) {
+        String columns = Reflect.getDefaultColumns(tClass);
+        if (columns != null && (options == null || options.selectColumns == null)) {
+            options = (options != null) ? options.copy() : new Options();
+            options.selectColumns = columns;
+        }
+        return query(tableName, options);
+    }
+
+
+    static <T> String queryAll(Class<T> tClass, Options options) {
         return query(tClass.getSimpleName().toLowerCase(), options);
     }
 
 
-    static <T> String createIndex(Class<T> tClass, String column) {
-        String table = tClass.getSimpleName().toLowerCase();
-        String index = $("idx_%s_%s", table, column);
-        return $("create index %s on %s(%s)", index, table, column);
+    static String createSchemaTable() {
+        return $("create table if not exists %s (table_name varchar(128) primary key, fingerprint varchar(64));", SCHEMA_TABLE);
+    }
+
+
+    static String saveFingerprint(String tableName, String fingerprint) {
+        return $("replace into %s (table_name, fingerprint) values ('%s', '%s');", SCHEMA_TABLE, tableName, fingerprint);
+    }
+
+
+    static String deleteFingerprint(String tableName) {
+        return $("delete from %s where table_name = '%s';", SCHEMA_TABLE, tableName);
+    }
+
+
+    static String createSequenceTable() {
+        return $("create table if not exists %s (name varchar(128) primary key, next_id bigint);", SEQUENCE_TABLE);
+    }
+
+
+    static String advanceSequence(String name, int blockSize) {
+        return $("update %s set next_id = next_id + %d where name = '%s';", SEQUENCE_TABLE, blockSize, name);
+    }
+
+
+    static String readSequence(String name) {
+        return $("select next_id from %s where name = '%s';", SEQUENCE_TABLE, name);
+    }
+
+
+    static String insertSequence(String name, long nextId, Config config) {
+        String insert = Objects.equals(config.driver, Config.Driver.SQLITE) ? "insert or ignore" : "insert ignore";
+        return $("%s into %s (name, next_id) values ('%s', %d);", insert, SEQUENCE_TABLE, name, nextId);
+    }
+
+
+    static String createFulltext(IndexDefinition index) {
+        return $("create virtual table %s using fts5(%s, content='%s', content_rowid='id')", index.name, String.join(", ", index.columns), index.table);
+    }
+
+
+    static List<String> createFulltextTriggers(IndexDefinition index) {
+        String columns = String.join(", ", index.columns);
+        String newValues = index.columns.stream().map(c -> "new." + c).collect(Collectors.joining(", "));
+        String oldValues = index.columns.stream().map(c -> "old." + c).collect(Collectors.joining(", "));
+        String insert = $("insert into %s(rowid, %s) values (new.id, %s);", index.name, columns, newValues);
+        String delete = $("insert into %s(%s, rowid, %s) values ('delete', old.id, %s);", index.name, index.name, columns, oldValues);
+        return Arrays.asList(
+                $("create trigger %s_ai after insert on %s begin %s end;", index.name, index.table, insert),
+                $("create trigger %s_ad after delete on %s begin %s end;", index.name, index.table, delete),
+                $("create trigger %s_au after update on %s begin %s %s end;", index.name, index.table, delete, insert));
+    }
+
+
+    static String rebuildFulltext(IndexDefinition index) {
+        return $("insert into %s(%s) values ('rebuild');", index.name, index.name);
+    }
+
+
+    static List<String> dropFulltext(String table) {
+        String name = table + "_fts";
+        return Arrays.asList(
+                $("drop trigger if exists %s_ai;", name),
+                $("drop trigger if exists %s_ad;", name),
+                $("drop trigger if exists %s_au;", name),
+                $("drop table if exists %s;", name));
+    }
+
+
+    static <T> String search(Class<T> tClass, String query, Options options, Config config) {
+        String tableName = tClass.getSimpleName().toLowerCase();
+        List<String> columns = new Reflect<>(tClass).getFulltextColumns();
+        if (columns.isEmpty()) {
+            throw new IllegalArgumentException("No @Column(fulltext = true) field in " + tClass.getSimpleName());
+        }
+        Options o = (options != null) ? options : new Options();
+        String selectColumns = Optional.ofNullable(o.selectColumns).orElse(Optional.ofNullable(Reflect.getDefaultColumns(tClass)).orElse(tableName + ".*"));
+        String limitString = (o.limitSize != null) ? $(" limit %d", o.limitSize) : "";
+        String offsetString = (o.offsetSize != null) ? $(" offset %d", o.offsetSize) : "";
+        String orderString = $(" order by %s", Optional.ofNullable(o.orderColumns).orElse("orm_score desc"));
+        if (Objects.equals(config.driver, Config.Driver.SQLITE)) {
+            String fts = tableName + "_fts";
+            String terms = fulltextTerms(query);
+            String condition = (terms != null) ? $("%s match '%s'", fts, terms.replace("'", "''")) : "1 = 0";
+            String match = $("select rowid, -bm25(%s) as orm_score, snippet(%s, -1, '[', ']', '...', 12) as orm_snippet from %s where %s",
+                    fts, fts, fts, condition);
+            String whereString = (o.wherePredicate != null) ? $(" where %s", o.wherePredicate) : "";
+            return $("select %s, orm_score, orm_snippet from %s join (%s) orm_match on %s.id = orm_match.rowid%s%s%s%s;",
+                    selectColumns, tableName, match, tableName, whereString, orderString, limitString, offsetString);
+        }
+        String match = $("match(%s) against ('%s' in natural language mode)", String.join(", ", columns),
+                query.replace("\\", "\\\\").replace("'", "''"));
+        String whereString = (o.wherePredicate != null) ? $(" and (%s)", o.wherePredicate) : "";
+        return $("select %s, %s as orm_score, null as orm_snippet from %s where %s%s%s%s%s;",
+                selectColumns, match, tableName, match, whereString, orderString, limitString, offsetString);
+    }
+
+
+    static String fulltextTerms(String query) {
+        List<String> terms = new ArrayList<>();
+        for (String term : query.trim().split("\\s+")) {
+            if (!term.isEmpty()) {
+                terms.add("\"" + term.replace("\"", "\"\"") + "\"");
+            }
+        }
+        return terms.isEmpty() ? null : String.join(" OR ", terms);
+    }
+
+
+    static String createIndex(IndexDefinition index, Config config) {
+        boolean sqlite = Objects.equals(config.driver, Config.Driver.SQLITE);
+        if (!sqlite && index.where != null && index.unique) {
+            throw new IllegalArgumentException("Partial unique indexes are only supported on SQLite: " + index.name);
+        }
+        String unique = index.fulltext ? "fulltext " : index.unique ? "unique " : "";
+        String where = (sqlite && index.where != null) ? $(" where %s", index.where) : "";
+        return $("create %sindex %s on %s(%s)%s", unique, index.name, index.table, String.join(", ", index.columns), where);
     }
 
 
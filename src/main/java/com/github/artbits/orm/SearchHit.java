@@ -0,0 +1,90 @@
+/**
+ * Copyright 2023 Zhang Guanhu
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.artbits.orm;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+
+public final class SearchHit<T> {
+
+    private final static int SNIPPET_RADIUS = 60;
+
+    private final T entity;
+    private final double score;
+    private final String snippet;
+
+
+    SearchHit(T entity, double score, String snippet) {
+        this.entity = entity;
+        this.score = score;
+        this.snippet = snippet;
+    }
+
+
+    public T entity() {
+        return entity;
+    }
+
+
+    public double score() {
+        return score;
+    }
+
+
+    public String snippet() {
+        return snippet;
+    }
+
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("{\"score\":").append(score).append(",\"snippet\":");
+        try {
+            JsonObject.escape(builder, String.valueOf(snippet));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return builder.append(",\"entity\":").append(new JsonObject(entity)).append("}").toString();
+    }
+
+
+    static <T> String snippet(T t, List<String> columns, String query) {
+        Reflect<T> reflect = new Reflect<>(t);
+        String fallback = null;
+        for (String column : columns) {
+            Object value = reflect.getValue(column);
+            if (value == null) {
+                continue;
+            }
+            String text = value.toString();
+            fallback = (fallback != null) ? fallback : text;
+            String lower = text.toLowerCase(Locale.ROOT);
+            for (String term : query.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+                int at = term.isEmpty() ? -1 : lower.indexOf(term);
+                if (at >= 0) {
+                    int from = Math.max(0, at - SNIPPET_RADIUS);
+                    int to = Math.min(text.length(), at + term.length() + SNIPPET_RADIUS);
+                    return ((from > 0) ? "..." : "") + text.substring(from, at) + "[" + text.substring(at, at + term.length()) + "]"
+                            + text.substring(at + term.length(), to) + ((to < text.length()) ? "..." : "");
+                }
+            }
+        }
+        return (fallback != null && fallback.length() > 2 * SNIPPET_RADIUS) ? fallback.substring(0, 2 * SNIPPET_RADIUS) + "..." : fallback;
+    }
+
+}
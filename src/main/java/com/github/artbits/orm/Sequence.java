@@ -0,0 +1,94 @@
+/**
+ * Copyright 2023 Zhang Guanhu
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.artbits.orm;
+
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+final class Sequence {
+
+    private final Runner runner;
+    private final Config config;
+    private final String name;
+    private final int blockSize;
+    private final LongSupplier seed;
+    private volatile Block block;
+
+
+    Sequence(Runner runner, Config config, String name, int blockSize, LongSupplier seed) {
+        this.runner = runner;
+        this.config = config;
+        this.name = name;
+        this.blockSize = Math.max(1, blockSize);
+        this.seed = seed;
+    }
+
+
+    long next() {
+        while (true) {
+            Block current = block;
+            if (current != null) {
+                long id = current.next.getAndIncrement();
+                if (id < current.end) {
+                    return id;
+                }
+            }
+            synchronized (this) {
+                if (block == current) {
+                    block = reserve();
+                }
+            }
+        }
+    }
+
+
+    private Block reserve() {
+        runner.executeUpdate(SQLTemplate.createSequenceTable());
+        if (!runner.onPrimary(() -> runner.executeQuery(SQLTemplate.readSequence(name), ResultSet::next))) {
+            runner.executeUpdate(SQLTemplate.insertSequence(name, Math.max(1, seed.getAsLong()), config));
+        }
+        long start = runner.executeTransaction(connection -> {
+            try (Statement statement = connection.createStatement()) {
+                if (statement.executeUpdate(SQLTemplate.advanceSequence(name, blockSize)) == 0) {
+                    throw new IllegalStateException("Sequence row is missing: " + name);
+                }
+                try (ResultSet set = statement.executeQuery(SQLTemplate.readSequence(name))) {
+                    set.next();
+                    return set.getLong(1) - blockSize;
+                }
+            }
+        });
+        return new Block(start, start + blockSize);
+    }
+
+
+    private static final class Block {
+
+        final AtomicLong next;
+        final long end;
+
+
+        Block(long start, long end) {
+            this.next = new AtomicLong(start);
+            this.end = end;
+        }
+
+    }
+
+}
@@ -0,0 +1,66 @@
+/**
+ * Copyright 2023 Zhang Guanhu
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.artbits.orm;
+
+import java.util.AbstractMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+final class Session {
+
+    private final Map<Map.Entry<Class<?>, Long>, Object> entities;
+    int depth;
+
+
+    Session(int capacity) {
+        int size = Math.max(1, capacity);
+        entities = new LinkedHashMap<Map.Entry<Class<?>, Long>, Object>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Map.Entry<Class<?>, Long>, Object> eldest) {
+                return size() > size;
+            }
+        };
+    }
+
+
+    @SuppressWarnings("unchecked")
+    <T> T get(Class<T> tClass, long id) {
+        return (T) entities.get(key(tClass, id));
+    }
+
+
+    @SuppressWarnings("unchecked")
+    <T> T attach(T t) {
+        Object id = new Reflect<>(t).getValue("id");
+        if (!(id instanceof Number)) {
+            return t;
+        }
+        Object existing = entities.putIfAbsent(key(t.getClass(), ((Number) id).longValue()), t);
+        return (existing != null) ? (T) existing : t;
+    }
+
+
+    void evict(Class<?> tClass) {
+        entities.keySet().removeIf(key -> key.getKey() == tClass);
+    }
+
+
+    private static Map.Entry<Class<?>, Long> key(Class<?> tClass, long id) {
+        return new AbstractMap.SimpleImmutableEntry<>(tClass, id);
+    }
+
+}
@@ -0,0 +1,600 @@
+/**
+ * Copyright 2023 Zhang Guanhu
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.artbits.orm;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+final class ShardedCore implements DB {
+
+    private final static int SEQUENCE_BLOCK_SIZE = 1000;
+
+    private final List<Core> shards = new ArrayList<>();
+    private final Map<Class<?>, Sequence> sequences = new ConcurrentHashMap<>();
+    private final Map<Class<?>, String> keys = new ConcurrentHashMap<>();
+    private final ExecutorService executor;
+    private final int blockSize;
+
+
+    ShardedCore(Config... configs) {
+        if (configs.length == 0) {
+            throw new IllegalArgumentException("No shard configs specified");
+        }
+        for (Config config : configs) {
+            shards.add(new Core(config));
+        }
+        blockSize = (configs[0].idBlockSize > 0) ? configs[0].idBlockSize : SEQUENCE_BLOCK_SIZE;
+        executor = Executors.newFixedThreadPool(configs.length, runnable -> {
+            Thread thread = new Thread(runnable, "orm-shard");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+
+    @Override
+    public void close() {
+        executor.shutdown();
+        shards.forEach(Core::close);
+    }
+
+
+    @Override
+    public void tables(Class<?>... classes) {
+        scatter(shard -> {
+            shard.tables(classes);
+            return null;
+        });
+    }
+
+
+    @Override
+    public void drop(Class<?>... classes) {
+        scatter(shard -> {
+            shard.drop(classes);
+            return null;
+        });
+        for (Class<?> tClass : classes) {
+            sequences.remove(tClass);
+        }
+    }
+
+
+    @Override
+    public <T> long insert(T t) {
+        new Reflect<>(t).setValue("id", null);
+        return route(t).insert(t, true);
+    }
+
+
+    @Override
+    public <T> int insertAll(List<T> list) {
+        Map<Core, List<T>> groups = new LinkedHashMap<>();
+        for (T t : list) {
+            groups.computeIfAbsent(route(t), k -> new ArrayList<>()).add(t);
+        }
+        return scatter(groups, Core::insertAll).stream().mapToInt(Integer::intValue).sum();
+    }
+
+
+    @Override
+    public <T> int upsert(T t) {
+        return upsertAll(Collections.singletonList(t));
+    }
+
+
+    @Override
+    public <T> int upsertAll(List<T> list) {
+        Map<Core, List<T>> groups = new LinkedHashMap<>();
+        for (T t : list) {
+            groups.computeIfAbsent(route(t), k -> new ArrayList<>()).add(t);
+        }
+        return scatter(groups, Core::upsertAll).stream().mapToInt(Integer::intValue).sum();
+    }
+
+
+    @Override
+    public <T> int update(T t, String predicate, Object... args) {
+        return scatter(shard -> shard.update(t, predicate, args)).stream().mapToInt(Integer::intValue).sum();
+    }
+
+
+    @Override
+    public <T> int update(T t, long id) {
+        if (!byId(t.getClass())) {
+            return update(t, "id = ?", id);
+        }
+        return shard(id).update(t, id);
+    }
+
+
+    @Override
+    public <T> long bulkUpdate(T t, Consumer<Bulk> consumer, String predicate, Object... args) {
+        return scatter(shard -> shard.bulkUpdate(t, consumer, predicate, args)).stream().mapToLong(Long::longValue).sum();
+    }
+
+
+    @Override
+    public <T> int delete(Class<T> tClass, String predicate, Object... args) {
+        return scatter(shard -> shard.delete(tClass, predicate, args)).stream().mapToInt(Integer::intValue).sum();
+    }
+
+
+    @Override
+    public <T> int delete(Class<T> tClass, List<Long> ids) {
+        if (!byId(tClass)) {
+            return scatter(shard -> shard.delete(tClass, ids)).stream().mapToInt(Integer::intValue).sum();
+        }
+        return scatter(group(ids), (shard, part) -> shard.delete(tClass, part)).stream().mapToInt(Integer::intValue).sum();
+    }
+
+
+    @Override
+    public <T> int delete(Class<T> tClass, Long... ids) {
+        return delete(tClass, Arrays.asList(ids));
+    }
+
+
+    @Override
+    public <T> int deleteAll(Class<T> tClass) {
+        return scatter(shard -> shard.deleteAll(tClass)).stream().mapToInt(Integer::intValue).sum();
+    }
+
+
+    @Override
+    public <T> long bulkDelete(Class<T> tClass, Consumer<Bulk> consumer, String predicate, Object... args) {
+        return scatter(shard -> shard.bulkDelete(tClass, consumer, predicate, args)).stream().mapToLong(Long::longValue).sum();
+    }
+
+
+    @Override
+    public <T> List<T> find(Class<T> tClass, Consumer<Options> consumer) {
+        Options options = (consumer != null) ? new Options() : null;
+        Optional.ofNullable(consumer).ifPresent(c -> c.accept(options));
+        if (options != null && options.groupColumns != null) {
+            throw new IllegalArgumentException("Grouped finds are not supported across shards, use aggregateGroup");
+        }
+        Options part = Merger.scatter(options);
+        List<T> list = Merger.merge(scatter(shard -> shard.fetch(tClass, part)), options);
+        if (options != null) {
+            Relations.include(list, options.includeRelations, (c, o) -> Merger.merge(scatter(shard -> shard.fetch(c, o)), null));
+        }
+        return list;
+    }
+
+
+    @Override
+    public <T> List<T> find(Class<T> tClass, List<Long> ids) {
+        List<T> list = new ArrayList<>();
+        if (!byId(tClass)) {
+            scatter(shard -> shard.find(tClass, ids)).forEach(list::addAll);
+            return list;
+        }
+        scatter(group(ids), (shard, part) -> shard.find(tClass, part)).forEach(list::addAll);
+        return list;
+    }
+
+
+    @Override
+    public <T> List<T> find(Class<T> tClass, Long... ids) {
+        return find(tClass, Arrays.asList(ids));
+    }
+
+
+    @Override
+    public <T> List<T> findAll(Class<T> tClass) {
+        return find(tClass, (Consumer<Options>) null);
+    }
+
+
+    @Override
+    public <T> void load(List<T> list, String... columns) {
+        if (list.isEmpty()) {
+            return;
+        }
+        if (!byId(list.get(0).getClass())) {
+            scatter(shard -> {
+                shard.load(list, columns);
+                return null;
+            });
+            return;
+        }
+        Map<Core, List<T>> groups = new LinkedHashMap<>();
+        for (T t : list) {
+            Object id = new Reflect<>(t).getValue("id");
+            if (id != null) {
+                groups.computeIfAbsent(shard(((Number) id).longValue()), k -> new ArrayList<>()).add(t);
+            }
+        }
+        scatter(groups, (shard, part) -> {
+            shard.load(part, columns);
+            return null;
+        });
+    }
+
+
+    @Override
+    public <T> Query.Builder<T> query(Class<T> tClass) {
+        return new Query.Builder<>(shards.get(0), this, tClass);
+    }
+
+
+    @Override
+    public <Y> Y session(Function<DB, Y> function) {
+        shards.forEach(Core::begin);
+        try {
+            return function.apply(this);
+        } finally {
+            shards.forEach(Core::end);
+        }
+    }
+
+
+    @Override
+    public <T> List<T> search(Class<T> tClass, String query, Consumer<Options> consumer) {
+        return searchHits(tClass, query, consumer).stream().map(SearchHit::entity).collect(Collectors.toList());
+    }
+
+
+    @Override
+    public <T> List<SearchHit<T>> searchHits(Class<T> tClass, String query, Consumer<Options> consumer) {
+        Options options = new Options();
+        Optional.ofNullable(consumer).ifPresent(c -> c.accept(options));
+        Options part = Merger.scatter(options);
+        List<SearchHit<T>> list = new ArrayList<>();
+        scatter(shard -> shard.searchHits(tClass, query, part)).forEach(list::addAll);
+        if (options.orderColumns != null) {
+            Comparator<T> comparator = Merger.comparator(tClass, options.orderColumns);
+            list.sort((a, b) -> comparator.compare(a.entity(), b.entity()));
+        } else {
+            list.sort(Comparator.comparingDouble((SearchHit<T> hit) -> hit.score()).reversed());
+        }
+        return Merger.window(list, options);
+    }
+
+
+    @Override
+    public <T> List<T> findParallel(Class<T> tClass, Consumer<Options> consumer) {
+        List<T> list = new ArrayList<>();
+        scatter(shard -> shard.findParallel(tClass, consumer)).forEach(list::addAll);
+        return list;
+    }
+
+
+    @Override
+    public <T> Stream<T> streamParallel(Class<T> tClass, Consumer<Options> consumer) {
+        return shards.parallelStream().flatMap(shard -> shard.streamParallel(tClass, consumer));
+    }
+
+
+    @Override
+    public <T> T findOne(Class<T> tClass, String predicate, Object... args) {
+        List<T> list = find(tClass, options -> options.where(predicate, args).limit(1));
+        return (!list.isEmpty()) ? list.get(0) : null;
+    }
+
+
+    @Override
+    public <T> T findOne(Class<T> tClass, Long id) {
+        if (!byId(tClass)) {
+            return scatter(shard -> shard.findOne(tClass, id)).stream().filter(Objects::nonNull).findFirst().orElse(null);
+        }
+        return shard(id).findOne(tClass, id);
+    }
+
+
+    @Override
+    public <T> T first(Class<T> tClass, String predicate, Object... args) {
+        List<T> list = find(tClass, options -> options.where(predicate, args).order("id", Options.ASC).limit(1));
+        return (!list.isEmpty()) ? list.get(0) : null;
+    }
+
+
+    @Override
+    public <T> T first(Class<T> tClass) {
+        return first(tClass, null, (Object) null);
+    }
+
+
+    @Override
+    public <T> T last(Class<T> tClass, String predicate, Object... args) {
+        List<T> list = find(tClass, options -> options.where(predicate, args).order("id", Options.DESC).limit(1));
+        return (!list.isEmpty()) ? list.get(0) : null;
+    }
+
+
+    @Override
+    public <T> T last(Class<T> tClass) {
+        return last(tClass, null, (Object) null);
+    }
+
+
+    @Override
+    public <T> boolean exists(Class<T> tClass, String predicate, Object... args) {
+        return scatter(shard -> shard.exists(tClass, predicate, args)).contains(true);
+    }
+
+
+    @Override
+    public <T> boolean exists(Class<T> tClass) {
+        return exists(tClass, null, (Object) null);
+    }
+
+
+    @Override
+    public <T> long count(Class<T> tClass, String predicate, Object... args) {
+        return scatter(shard -> shard.count(tClass, predicate, args)).stream().mapToLong(Long::longValue).sum();
+    }
+
+
+    @Override
+    public <T> long count(Class<T> tClass) {
+        return count(tClass, null, (Object) null);
+    }
+
+
+    @Override
+    public <T> double average(Class<T> tClass, String column, String predicate, Object... args) {
+        return aggregate(tClass, a -> a.average(column).where(predicate, args)).average(column);
+    }
+
+
+    @Override
+    public <T> double average(Class<T> tClass, String column) {
+        return average(tClass, column, null, (Object) null);
+    }
+
+
+    @Override
+    public <T> Number sum(Class<T> tClass, String column, String predicate, Object... args) {
+        return aggregate(tClass, a -> a.sum(column).where(predicate, args)).sum(column);
+    }
+
+
+    @Override
+    public <T> Number sum(Class<T> tClass, String column) {
+        return sum(tClass, column, null, (Object) null);
+    }
+
+
+    @Override
+    public <T> Number max(Class<T> tClass, String column, String predicate, Object... args) {
+        return aggregate(tClass, a -> a.max(column).where(predicate, args)).max(column);
+    }
+
+
+    @Override
+    public <T> Number max(Class<T> tClass, String column) {
+        return max(tClass, column, null, (Object) null);
+    }
+
+
+    @Override
+    public <T> Number min(Class<T> tClass, String column, String predicate, Object... args) {
+        return aggregate(tClass, a -> a.min(column).where(predicate, args)).min(column);
+    }
+
+
+    @Override
+    public <T> Number min(Class<T> tClass, String column) {
+        return min(tClass, column, null, (Object) null);
+    }
+
+
+    @Override
+    public <T> long export(Class<T> tClass, Consumer<Options> consumer, OutputStream stream, Format format) {
+        return export(tClass, consumer, stream, format, false);
+    }
+
+
+    @Override
+    public <T> long export(Class<T> tClass, Consumer<Options> consumer, OutputStream stream, Format format, boolean gzip) {
+        Options options = (consumer != null) ? new Options() : null;
+        Optional.ofNullable(consumer).ifPresent(c -> c.accept(options));
+        if (options != null && (options.orderColumns != null || options.limitSize != null || options.offsetSize != null)) {
+            throw new IllegalArgumentException("Sharded exports only support select and where options");
+        }
+        try {
+            long rows = 0;
+            try (GZIPOutputStream gzipStream = gzip ? new Exporter.Gzip(stream) : null) {
+                OutputStream out = (gzipStream != null) ? gzipStream : stream;
+                for (int i = 0; i < shards.size(); i++) {
+                    rows += shards.get(i).export(tClass, options, out, format, false, i == 0);
+                }
+            }
+            stream.flush();
+            return rows;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+
+    @Override
+    public <T> ImportReport importFile(Class<T> tClass, Path path, Format format, ImportOptions options) {
+        String key = key(tClass);
+        return Importer.run(shards, tClass, key, () -> sequence(tClass).next(), value -> index(value), path, format,
+                (options != null) ? options : ImportOptions.of(o -> {}));
+    }
+
+
+    @Override
+    public <T> Plan explain(Class<T> tClass, Consumer<Options> consumer) {
+        return shards.get(0).explain(tClass, consumer);
+    }
+
+
+    @Override
+    public Advisor advisor() {
+        return shards.get(0).advisor();
+    }
+
+
+    @Override
+    public <T> Statistics aggregate(Class<T> tClass, Consumer<Aggregate> consumer) {
+        return Statistics.merge(scatter(shard -> shard.aggregate(tClass, a -> {
+            consumer.accept(a);
+            a.mergeable();
+        })));
+    }
+
+
+    @Override
+    public <T> Map<Object, Statistics> aggregateGroup(Class<T> tClass, Consumer<Aggregate> consumer) {
+        Map<Object, List<Statistics>> groups = new LinkedHashMap<>();
+        for (Map<Object, Statistics> part : scatter(shard -> shard.aggregateGroup(tClass, a -> {
+            consumer.accept(a);
+            a.mergeable();
+        }))) {
+            part.forEach((key, statistics) -> groups.computeIfAbsent(key, k -> new ArrayList<>()).add(statistics));
+        }
+        Map<Object, Statistics> map = new LinkedHashMap<>();
+        groups.forEach((key, parts) -> map.put(key, Statistics.merge(parts)));
+        return map;
+    }
+
+
+    @Override
+    public <T> List<String> partitions(Class<T> tClass) {
+        Set<String> partitions = new TreeSet<>();
+        scatter(shard -> shard.partitions(tClass)).forEach(partitions::addAll);
+        return new ArrayList<>(partitions);
+    }
+
+
+    @Override
+    public <T> int dropPartitions(Class<T> tClass, long before) {
+        return scatter(shard -> shard.dropPartitions(tClass, before)).stream().mapToInt(Integer::intValue).sum();
+    }
+
+
+    @Override
+    public <T> long purge(Class<T> tClass) {
+        return scatter(shard -> shard.purge(tClass)).stream().mapToLong(Long::longValue).sum();
+    }
+
+
+    @Override
+    public PurgeStats purgeStats() {
+        return PurgeStats.merge(scatter(Core::purgeStats));
+    }
+
+
+    private Core shard(long id) {
+        return shards.get(index(id));
+    }
+
+
+    private <T> Core route(T t) {
+        Reflect<T> reflect = new Reflect<>(t);
+        if (reflect.getValue("id") == null) {
+            reflect.setValue("id", sequence(t.getClass()).next());
+        }
+        String key = key(t.getClass());
+        Object value = reflect.getValue(key);
+        if (value == null) {
+            throw new IllegalArgumentException("Shard key " + key + " must not be null");
+        }
+        return shards.get(index(value));
+    }
+
+
+    private int index(Object value) {
+        long hash;
+        if (value instanceof Boolean) {
+            hash = ((Boolean) value) ? 1 : 0;
+        } else if (value instanceof Number) {
+            hash = ((Number) value).longValue();
+        } else {
+            hash = value.toString().hashCode();
+        }
+        return (int) Math.floorMod(hash, (long) shards.size());
+    }
+
+
+    private String key(Class<?> tClass) {
+        return keys.computeIfAbsent(tClass, c -> {
+            Shard shard = c.getAnnotation(Shard.class);
+            String key = (shard != null) ? shard.key() : "id";
+            Reflect<?> reflect = new Reflect<>(c);
+            if (!reflect.hasField(key) || reflect.isCompressed(key)) {
+                throw new IllegalArgumentException("Shard key must be an uncompressed field: " + key);
+            }
+            return key;
+        });
+    }
+
+
+    private boolean byId(Class<?> tClass) {
+        return Objects.equals(key(tClass), "id");
+    }
+
+
+    private Sequence sequence(Class<?> tClass) {
+        return sequences.computeIfAbsent(tClass, c -> new Sequence(shards.get(0).runner(), shards.get(0).config(),
+                c.getSimpleName().toLowerCase(), blockSize, () -> seed(c)));
+    }
+
+
+    private long seed(Class<?> tClass) {
+        return scatter(shard -> shard.seed(tClass)).stream().mapToLong(Long::longValue).max().orElse(1);
+    }
+
+
+    private Map<Core, List<Long>> group(List<Long> ids) {
+        return ids.stream().collect(Collectors.groupingBy(this::shard, LinkedHashMap::new, Collectors.toList()));
+    }
+
+
+    <Y> List<Y> scatter(Function<Core, Y> function) {
+        Map<Core, Void> all = new LinkedHashMap<>();
+        shards.forEach(shard -> all.put(shard, null));
+        return scatter(all, (shard, ignored) -> function.apply(shard));
+    }
+
+
+    private <X, Y> List<Y> scatter(Map<Core, X> parts, BiFunction<Core, X, Y> function) {
+        List<Future<Y>> futures = new ArrayList<>();
+        parts.forEach((shard, part) -> futures.add(executor.submit(() -> function.apply(shard, part))));
+        List<Y> results = new ArrayList<>();
+        try {
+            for (Future<Y> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw (e.getCause() instanceof RuntimeException) ? (RuntimeException) e.getCause() : new RuntimeException(e.getCause());
+        }
+        return results;
+    }
+
+}
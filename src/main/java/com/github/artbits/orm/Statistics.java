@@ -0,0 +1,171 @@
+/**
+ * Copyright 2023 Zhang Guanhu
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.artbits.orm;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Objects;
+
+public final class Statistics {
+
+    private final List<String> functions;
+    private final boolean[] reals;
+    private final long[] longs;
+    private final double[] doubles;
+
+
+    Statistics(List<String> functions, boolean[] reals, ResultSet set) throws SQLException {
+        this.functions = functions;
+        this.reals = reals;
+        this.longs = new long[reals.length];
+        this.doubles = new double[reals.length];
+        for (int i = 0; i < reals.length; i++) {
+            if (reals[i]) {
+                doubles[i] = set.getDouble(i + 1);
+            } else {
+                longs[i] = set.getLong(i + 1);
+            }
+        }
+    }
+
+
+    Statistics(List<String> functions, boolean[] reals, long[] longs, double[] doubles) {
+        this.functions = functions;
+        this.reals = reals;
+        this.longs = longs;
+        this.doubles = doubles;
+    }
+
+
+    public long count() {
+        return longs[slot("count(*)")];
+    }
+
+
+    public long count(String column) {
+        return longs[slot(String.format("count(%s)", column))];
+    }
+
+
+    public Number sum(String column) {
+        return number(slot(String.format("sum(%s)", column)));
+    }
+
+
+    public double average(String column) {
+        return doubles[slot(String.format("avg(%s)", column))];
+    }
+
+
+    public Number max(String column) {
+        return number(slot(String.format("max(%s)", column)));
+    }
+
+
+    public Number min(String column) {
+        return number(slot(String.format("min(%s)", column)));
+    }
+
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder().append("{");
+        for (int i = 0; i < reals.length; i++) {
+            builder.append("\"").append(functions.get(i)).append("\":").append(number(i)).append(",");
+        }
+        return ((builder.length() > 2) ? builder.deleteCharAt(builder.length() - 1) : builder).append("}").toString();
+    }
+
+
+    private Number number(int slot) {
+        return reals[slot] ? (Number) doubles[slot] : (Number) longs[slot];
+    }
+
+
+    private int slot(String function) {
+        int slot = functions.indexOf(function);
+        if (slot < 0) {
+            throw new IllegalArgumentException(function + " was not aggregated");
+        }
+        return slot;
+    }
+
+
+    static Statistics merge(List<Statistics> parts) {
+        Statistics first = parts.get(0);
+        int size = first.reals.length;
+        long[] longs = new long[size];
+        double[] doubles = new double[size];
+        for (int i = 0; i < size; i++) {
+            String function = first.functions.get(i);
+            String column = function.substring(function.indexOf('(') + 1, function.length() - 1);
+            if (function.startsWith("count(") || function.startsWith("sum(")) {
+                for (Statistics part : parts) {
+                    longs[i] += part.longs[i];
+                    doubles[i] += part.doubles[i];
+                }
+            } else if (function.startsWith("avg(")) {
+                int sum = first.slot(String.format("sum(%s)", column));
+                int count = first.slot(String.format("count(%s)", column));
+                double total = 0;
+                long rows = 0;
+                for (Statistics part : parts) {
+                    total += first.reals[sum] ? part.doubles[sum] : part.longs[sum];
+                    rows += part.longs[count];
+                }
+                doubles[i] = (rows > 0) ? total / rows : 0;
+            } else {
+                int count = first.slot(String.format("count(%s)", column));
+                boolean max = function.startsWith("max(");
+                boolean found = false;
+                for (Statistics part : parts) {
+                    if (part.longs[count] == 0) {
+                        continue;
+                    }
+                    double value = first.reals[i] ? part.doubles[i] : part.longs[i];
+                    double current = first.reals[i] ? doubles[i] : longs[i];
+                    if (!found || (max ? value > current : value < current)) {
+                        longs[i] = part.longs[i];
+                        doubles[i] = part.doubles[i];
+                        found = true;
+                    }
+                }
+            }
+        }
+        return new Statistics(first.functions, first.reals, longs, doubles);
+    }
+
+
+    static boolean[] types(Class<?> tClass, List<String> functions) {
+        Reflect<?> reflect = new Reflect<>(tClass);
+        boolean[] reals = new boolean[functions.size()];
+        for (int i = 0; i < reals.length; i++) {
+            String function = functions.get(i);
+            String column = function.substring(function.indexOf('(') + 1, function.length() - 1);
+            if (function.startsWith("count(")) {
+                reals[i] = false;
+            } else if (function.startsWith("avg(")) {
+                reals[i] = true;
+            } else {
+                reals[i] = !reflect.hasField(column) || Objects.equals(reflect.getDatabaseType(column), "real");
+            }
+        }
+        return reals;
+    }
+
+}
@@ -16,77 +16,243 @@
 
 package com.github.artbits.orm;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.sql.ResultSet;
-import java.util.HashMap;
-import java.util.Objects;
-import java.util.Optional;
+import java.sql.Statement;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
 
 final class TableManager {
 
-    private final static HashMap<String, HashMap<String, String>> tableColumnTypeMap = new HashMap<>();
-    private final static HashMap<String, String> indexTypeMap = new HashMap<>();
+    private final Map<String, Map<String, String>> tableColumnTypeMap = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, String>> tableIndexMap = new ConcurrentHashMap<>();
+    private final Map<String, NavigableSet<String>> partitionMap = new ConcurrentHashMap<>();
+    private final Runner runner;
+    private final Config config;
 
 
-    static void init(Runner runner, Config config, Class<?>... classes) {
-        for (Class<?> tClass : classes) {
-            createTable(runner, config, tClass);
-            loadMetaData(runner, tClass);
-            addColumn(runner, tClass);
-            addIndex(runner, tClass);
+    TableManager(Runner runner, Config config) {
+        this.runner = runner;
+        this.config = config;
+    }
+
+
+    void init(Class<?>... classes) {
+        Map<String, String> fingerprints = config.schemaCache ? loadFingerprints() : new HashMap<>();
+        Map<String, String> changed = new ConcurrentHashMap<>();
+        boolean parallel = Objects.equals(config.driver, Config.Driver.MYSQL) && classes.length > 1;
+        (parallel ? Arrays.stream(classes).parallel() : Arrays.stream(classes)).forEach(tClass -> {
+            String tableName = tClass.getSimpleName().toLowerCase();
+            String fingerprint = fingerprint(tClass);
+            Partitioner partitioner = Partitioner.of(tClass);
+            boolean unchanged = Objects.equals(fingerprints.get(tableName), fingerprint);
+            if (partitioner != null) {
+                NavigableSet<String> partitions = loadPartitions(partitioner);
+                if (!unchanged) {
+                    partitions.forEach(partition -> sync(tClass, partition));
+                }
+                partitionMap.put(tableName, partitions);
+            } else if (!unchanged) {
+                sync(tClass, tableName);
+            }
+            if (!unchanged) {
+                changed.put(tableName, fingerprint);
+            }
+        });
+        if (config.schemaCache) {
+            changed.forEach((tableName, fingerprint) -> runner.executeUpdate(SQLTemplate.saveFingerprint(tableName, fingerprint)));
+        }
+    }
+
+
+    void forget(Class<?> tClass) {
+        String tableName = tClass.getSimpleName().toLowerCase();
+        tableColumnTypeMap.remove(tableName);
+        tableIndexMap.remove(tableName);
+        Optional.ofNullable(partitionMap.remove(tableName)).ifPresent(partitions -> partitions.forEach(partition -> {
+            tableColumnTypeMap.remove(partition);
+            tableIndexMap.remove(partition);
+        }));
+        if (config.schemaCache) {
+            runner.executeUpdate(SQLTemplate.createSchemaTable());
+            runner.executeUpdate(SQLTemplate.deleteFingerprint(tableName));
         }
-        dropIndex(runner, config);
     }
 
 
-    private static void createTable(Runner runner, Config config, Class<?> tClass) {
-        runner.executeUpdate(SQLTemplate.create(tClass, config));
+    List<String> partitions(Class<?> tClass) {
+        Partitioner partitioner = Partitioner.of(tClass);
+        return new ArrayList<>(partitionMap.computeIfAbsent(partitioner.base, k -> loadPartitions(partitioner)));
+    }
+
+
+    String partition(Class<?> tClass, String table) {
+        Partitioner partitioner = Partitioner.of(tClass);
+        NavigableSet<String> partitions = partitionMap.computeIfAbsent(partitioner.base, k -> loadPartitions(partitioner));
+        if (!partitions.contains(table)) {
+            synchronized (partitions) {
+                if (!partitions.contains(table)) {
+                    runner.onPrimary(() -> {
+                        sync(tClass, table);
+                        return null;
+                    });
+                    partitions.add(table);
+                }
+            }
+        }
+        return table;
     }
 
 
-    private static void addColumn(Runner runner, Class<?> tClass) {
+    void dropPartition(Class<?> tClass, String table) {
+        Partitioner partitioner = Partitioner.of(tClass);
+        runner.executeUpdate(SQLTemplate.drop(table));
+        Optional.ofNullable(partitionMap.get(partitioner.base)).ifPresent(partitions -> partitions.remove(table));
+        tableColumnTypeMap.remove(table);
+        tableIndexMap.remove(table);
+    }
+
+
+    Map<String, String> columns(Class<?> tClass) {
         String tableName = tClass.getSimpleName().toLowerCase();
-        HashMap<String, String> columnTypeMap = tableColumnTypeMap.getOrDefault(tableName, null);
+        Map<String, String> columnTypeMap = tableColumnTypeMap.get(tableName);
+        if (columnTypeMap == null) {
+            loadMetaData(tableName);
+            columnTypeMap = tableColumnTypeMap.get(tableName);
+        }
+        return Collections.unmodifiableMap(columnTypeMap);
+    }
+
+
+    private Map<String, String> loadFingerprints() {
+        runner.executeUpdate(SQLTemplate.createSchemaTable());
+        return runner.executeQuery(SQLTemplate.query(SQLTemplate.SCHEMA_TABLE, null), set -> {
+            Map<String, String> map = new HashMap<>();
+            while (set.next()) {
+                map.put(set.getString("table_name"), set.getString("fingerprint"));
+            }
+            return map;
+        });
+    }
+
+
+    private String fingerprint(Class<?> tClass) {
+        StringBuilder builder = new StringBuilder(config.driver).append('|').append(tClass.getName()).append('|');
+        Reflect<?> reflect = new Reflect<>(tClass);
+        reflect.getDBColumnsWithType((column, type) -> builder.append(column).append(':').append(type).append(';'));
+        builder.append('|');
+        reflect.getIndexList().forEach(index -> builder.append(index.name).append(':').append(index.signature(config)).append(';'));
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(builder.toString().getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+
+    private NavigableSet<String> loadPartitions(Partitioner partitioner) {
+        String sql = Objects.equals(config.driver, Config.Driver.SQLITE)
+                ? SQLTemplate.query("sqlite_master", new Options().select("name").where("type = ?", "table"))
+                : SQLTemplate.query("information_schema.tables", new Options().select("table_name").where("table_schema = database()"));
+        return runner.onPrimary(() -> runner.executeQuery(sql, set -> {
+            NavigableSet<String> partitions = new ConcurrentSkipListSet<>();
+            while (set.next()) {
+                String table = set.getString(1);
+                if (table != null && partitioner.owns(table.toLowerCase())) {
+                    partitions.add(table.toLowerCase());
+                }
+            }
+            return partitions;
+        }));
+    }
+
+
+    private void sync(Class<?> tClass, String tableName) {
+        createTable(tClass, tableName);
+        loadMetaData(tableName);
+        addColumn(tClass, tableName);
+        syncIndex(tClass, tableName);
+    }
+
+
+    private void createTable(Class<?> tClass, String tableName) {
+        runner.executeUpdate(SQLTemplate.create(tClass, tableName, config));
+    }
+
+
+    private void addColumn(Class<?> tClass, String tableName) {
+        Map<String, String> columnTypeMap = tableColumnTypeMap.get(tableName);
         Reflect<?> reflect = new Reflect<>(tClass);
         if (columnTypeMap != null) {
             reflect.getDBColumnsWithType((column, type) -> {
-                if (columnTypeMap.getOrDefault(column, null) == null) {
-                    runner.executeUpdate(SQLTemplate.addColumn(tClass, column, type));
+                if (columnTypeMap.putIfAbsent(column, type) == null) {
+                    runner.executeUpdate(SQLTemplate.addColumn(tClass, tableName, column, type, config));
                 }
             });
         }
     }
 
 
-    private static void addIndex(Runner runner, Class<?> tClass) {
-        Reflect<?> reflect = new Reflect<>(tClass);
-        reflect.getIndexList((index, column) -> {
-            if (indexTypeMap.get(index) != null) {
-                indexTypeMap.remove(index, column);
-            } else {
-                runner.executeUpdate(SQLTemplate.createIndex(tClass, column));
+    private void syncIndex(Class<?> tClass, String tableName) {
+        Map<String, String> existing = new HashMap<>(tableIndexMap.getOrDefault(tableName, Collections.emptyMap()));
+        Map<String, String> declared = new ConcurrentHashMap<>();
+        for (IndexDefinition index : new Reflect<>(tClass).getIndexList(tableName)) {
+            String signature = index.signature(config);
+            if (index.fulltext && Objects.equals(config.driver, Config.Driver.SQLITE)) {
+                syncFulltext(index, signature);
+                continue;
             }
-        });
+            String current = existing.remove(index.name);
+            if (current != null && !Objects.equals(current, signature)) {
+                dropIndex(tableName, index.name);
+            }
+            if (!Objects.equals(current, signature)) {
+                runner.executeUpdate(SQLTemplate.createIndex(index, config));
+            }
+            declared.put(index.name, signature);
+        }
+        existing.keySet().forEach(index -> dropIndex(tableName, index));
+        tableIndexMap.put(tableName, declared);
     }
 
 
-    private static void dropIndex(Runner runner, Config config) {
-        indexTypeMap.forEach((index, column) -> {
-            if (Objects.equals(config.driver, Config.Driver.SQLITE)) {
+    private void syncFulltext(IndexDefinition index, String signature) {
+        String sql = SQLTemplate.query("sqlite_master", new Options().select("sql").where("type = ? && name = ?", "table", index.name));
+        String current = runner.executeQuery(sql, set -> set.next() ? IndexDefinition.normalize(set.getString(1)) : null);
+        if (Objects.equals(current, signature)) {
+            return;
+        }
+        SQLTemplate.dropFulltext(index.table).forEach(runner::executeUpdate);
+        runner.executeUpdate(SQLTemplate.createFulltext(index));
+        SQLTemplate.createFulltextTriggers(index).forEach(runner::executeUpdate);
+        runner.executeUpdate(SQLTemplate.rebuildFulltext(index));
+    }
+
+
+    private void dropIndex(String tableName, String index) {
+        if (Objects.equals(config.driver, Config.Driver.SQLITE)) {
+            if (!index.startsWith("sqlite_autoindex_")) {
                 runner.executeUpdate(SQLTemplate.dropIndex(null, index));
-            } else if (Objects.equals(config.driver, Config.Driver.MYSQL)) {
-                if (!Objects.equals(index, "PRIMARY")) {
-                    String tableName = index.replace("idx_", "").replace(("_" + column), "");
-                    runner.executeUpdate(SQLTemplate.dropIndex(tableName, index));
-                }
             }
-        });
+        } else if (Objects.equals(config.driver, Config.Driver.MYSQL)) {
+            if (!Objects.equals(index, "PRIMARY")) {
+                runner.executeUpdate(SQLTemplate.dropIndex(tableName, index));
+            }
+        }
     }
 
 
-    private static void loadMetaData(Runner runner, Class<?> tClass) {
-        String tableName = tClass.getSimpleName().toLowerCase();
+    private void loadMetaData(String tableName) {
         runner.getMetaData(data -> {
-            HashMap<String, String> columnTypeMap = new HashMap<>();
+            Map<String, String> columnTypeMap = new ConcurrentHashMap<>();
             try (ResultSet set = data.getColumns(null, null, tableName, null)) {
                 while (set.next()) {
                     String column = set.getString("COLUMN_NAME");
@@ -95,14 +261,47 @@ final class TableManager {
                 }
             }
             tableColumnTypeMap.put(tableName, columnTypeMap);
-            try (ResultSet set = data.getIndexInfo(null, null, tableName, false, false)){
-                while (set.next()) {
-                    String index = set.getString("INDEX_NAME");
-                    String column = set.getString("COLUMN_NAME");
-                    Optional.ofNullable(index).ifPresent(i -> indexTypeMap.put(index, column));
+            Map<String, String> indexMap = new ConcurrentHashMap<>();
+            if (Objects.equals(config.driver, Config.Driver.SQLITE)) {
+                String sql = SQLTemplate.query("sqlite_master", new Options().select("name", "sql").where("type = ? && tbl_name = ?", "index", tableName));
+                try (Statement statement = data.getConnection().createStatement(); ResultSet set = statement.executeQuery(sql)) {
+                    while (set.next()) {
+                        String index = set.getString("name");
+                        String definition = set.getString("sql");
+                        if (index != null && definition != null) {
+                            indexMap.put(index, IndexDefinition.normalize(definition));
+                        }
+                    }
+                }
+            } else {
+                Map<String, TreeMap<Short, String>> columnMap = new HashMap<>();
+                Map<String, Boolean> uniqueMap = new HashMap<>();
+                try (ResultSet set = data.getIndexInfo(null, null, tableName, false, false)) {
+                    while (set.next()) {
+                        String index = set.getString("INDEX_NAME");
+                        String column = set.getString("COLUMN_NAME");
+                        if (index != null && column != null) {
+                            String order = Objects.equals(set.getString("ASC_OR_DESC"), "D") ? " desc" : "";
+                            columnMap.computeIfAbsent(index, k -> new TreeMap<>()).put(set.getShort("ORDINAL_POSITION"), column.toLowerCase() + order);
+                            uniqueMap.put(index, !set.getBoolean("NON_UNIQUE"));
+                        }
+                    }
+                }
+                Set<String> fulltext = new HashSet<>();
+                String sql = SQLTemplate.query("information_schema.statistics", new Options().select("distinct index_name")
+                        .where("table_schema = database() && table_name = ? && index_type = ?", tableName, "FULLTEXT"));
+                try (Statement statement = data.getConnection().createStatement(); ResultSet set = statement.executeQuery(sql)) {
+                    while (set.next()) {
+                        fulltext.add(set.getString(1));
+                    }
                 }
+                columnMap.forEach((index, columns) -> {
+                    String unique = fulltext.contains(index) ? "fulltext " : uniqueMap.get(index) ? "unique " : "";
+                    indexMap.put(index, unique + String.join(",", columns.values()));
+                });
             }
+            tableIndexMap.put(tableName, indexMap);
         });
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,40 @@
+/**
+ * Copyright 2023 Zhang Guanhu
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.artbits.orm;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+public final class TenantConfig {
+    public String directory = "tenants";
+    public List<Class<?>> classes = new ArrayList<>();
+    public int maxOpen = 1000;
+    public long idleMillis = 5 * 60 * 1000;
+    public int poolSize = 2;
+    public Consumer<Config> config = c -> {};
+
+
+    private TenantConfig() { }
+
+
+    public static TenantConfig of(Consumer<TenantConfig> consumer) {
+        TenantConfig config = new TenantConfig();
+        consumer.accept(config);
+        return config;
+    }
+}
@@ -0,0 +1,220 @@
+/**
+ * Copyright 2023 Zhang Guanhu
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.artbits.orm;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+public final class Tenants implements AutoCloseable {
+
+    private final static Pattern NAME = Pattern.compile("[A-Za-z0-9_-][A-Za-z0-9_.-]{0,127}");
+
+    private final TenantConfig config;
+    private final LinkedHashMap<String, Entry> open = new LinkedHashMap<>(16, 0.75f, true);
+    private final Set<String> synced = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService sweeper;
+    private boolean closed;
+
+
+    Tenants(TenantConfig config) {
+        this.config = config;
+        try {
+            Files.createDirectories(Paths.get(config.directory));
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+        sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "orm-tenants");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (config.idleMillis > 0) {
+            long period = Math.max(1000, config.idleMillis / 2);
+            sweeper.scheduleWithFixedDelay(this::sweep, period, period, TimeUnit.MILLISECONDS);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close));
+    }
+
+
+    public <Y> Y with(String tenant, Function<DB, Y> function) {
+        Entry entry = acquire(tenant);
+        try {
+            return function.apply(entry.db);
+        } finally {
+            release(entry);
+        }
+    }
+
+
+    public void run(String tenant, Consumer<DB> consumer) {
+        with(tenant, db -> {
+            consumer.accept(db);
+            return null;
+        });
+    }
+
+
+    public synchronized int open() {
+        return open.size();
+    }
+
+
+    public void evict(String tenant) {
+        List<Entry> evicted = new ArrayList<>();
+        synchronized (this) {
+            Entry entry = open.get(tenant);
+            if (entry != null && entry.leases == 0) {
+                evicted.add(open.remove(tenant));
+            }
+        }
+        evicted.forEach(Entry::close);
+    }
+
+
+    @Override
+    public void close() {
+        List<Entry> evicted;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            evicted = new ArrayList<>(open.values());
+            open.clear();
+        }
+        sweeper.shutdownNow();
+        evicted.forEach(Entry::close);
+    }
+
+
+    private Entry acquire(String tenant) {
+        if (tenant == null || !NAME.matcher(tenant).matches()) {
+            throw new IllegalArgumentException("Invalid tenant name: " + tenant);
+        }
+        Entry entry;
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("Tenants is closed");
+            }
+            entry = open.computeIfAbsent(tenant, Entry::new);
+            entry.leases++;
+        }
+        try {
+            entry.init();
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                entry.leases--;
+                open.remove(tenant, entry);
+            }
+            throw e;
+        }
+        sweep();
+        return entry;
+    }
+
+
+    private void release(Entry entry) {
+        synchronized (this) {
+            entry.leases--;
+            entry.lastUsed = System.currentTimeMillis();
+        }
+    }
+
+
+    private void sweep() {
+        List<Entry> evicted = new ArrayList<>();
+        synchronized (this) {
+            long deadline = (config.idleMillis > 0) ? System.currentTimeMillis() - config.idleMillis : Long.MIN_VALUE;
+            int excess = open.size() - Math.max(1, config.maxOpen);
+            Iterator<Entry> iterator = open.values().iterator();
+            while (iterator.hasNext()) {
+                Entry entry = iterator.next();
+                if (entry.leases > 0) {
+                    continue;
+                }
+                if (excess > 0 || entry.lastUsed < deadline) {
+                    iterator.remove();
+                    evicted.add(entry);
+                    excess--;
+                }
+            }
+        }
+        evicted.forEach(Entry::close);
+    }
+
+
+    private Config config(String tenant) {
+        return Config.of(c -> {
+            c.driver = Config.Driver.SQLITE;
+            c.url = "jdbc:sqlite:" + Paths.get(config.directory, tenant + ".db");
+            c.initSize = 0;
+            c.maxSize = Math.max(1, config.poolSize);
+            c.minIdle = 0;
+            c.maxIdle = Math.max(1, config.poolSize);
+            c.parallelism = 1;
+            config.config.accept(c);
+        });
+    }
+
+
+    private final class Entry {
+
+        final String tenant;
+        volatile Core db;
+        int leases;
+        long lastUsed = System.currentTimeMillis();
+
+
+        Entry(String tenant) {
+            this.tenant = tenant;
+        }
+
+
+        synchronized void init() {
+            if (db != null) {
+                return;
+            }
+            Core core = new Core(config(tenant), false);
+            if (!config.classes.isEmpty() && synced.add(tenant)) {
+                try {
+                    core.tables(config.classes.toArray(new Class<?>[0]));
+                } catch (RuntimeException e) {
+                    synced.remove(tenant);
+                    core.close();
+                    throw e;
+                }
+            }
+            db = core;
+        }
+
+
+        synchronized void close() {
+            Optional.ofNullable(db).ifPresent(Core::close);
+            db = null;
+        }
+
+    }
+
+}
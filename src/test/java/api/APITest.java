@@ -3,11 +3,31 @@ package api;
 import com.github.artbits.orm.Column;
 import com.github.artbits.orm.Config;
 import com.github.artbits.orm.DB;
+import com.github.artbits.orm.Expiry;
+import com.github.artbits.orm.Format;
+import com.github.artbits.orm.ImportOptions;
+import com.github.artbits.orm.ImportReport;
+import com.github.artbits.orm.Index;
 import com.github.artbits.orm.Options;
+import com.github.artbits.orm.Partition;
+import com.github.artbits.orm.Query;
+import com.github.artbits.orm.Statistics;
+import com.github.artbits.orm.TenantConfig;
+import com.github.artbits.orm.Tenants;
+import com.github.artbits.orm.ToMany;
+import com.github.artbits.orm.ToOne;
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.function.Consumer;
 
 public final class APITest {
@@ -20,6 +40,8 @@ public final class APITest {
         public String name;
         public Integer age;
         public Boolean vip;
+        @ToMany(key = "userId")
+        public List<Book> books;
 
         public User(Consumer<User> consumer) {
             consumer.accept(this);
@@ -27,11 +49,18 @@ public final class APITest {
     }
 
 
+    @Index(columns = {"author", "price desc"}, include = "name")
+    @Index(columns = "name", unique = true, where = "price > 0")
     public static class Book {
         public Long id;
         public String name;
         public String author;
         public Double price;
+        @Column(lazy = true, fulltext = true)
+        public String intro;
+        public Long userId;
+        @ToOne(key = "userId")
+        public User owner;
 
         public Book(Consumer<Book> consumer) {
             consumer.accept(this);
@@ -39,6 +68,51 @@ public final class APITest {
     }
 
 
+    public static class Payload {
+        public Long id;
+        public String body;
+
+        public Payload(Consumer<Payload> consumer) {
+            consumer.accept(this);
+        }
+    }
+
+
+    public static class CompressedPayload {
+        public Long id;
+        @Column(compress = true)
+        public String body;
+
+        public CompressedPayload(Consumer<CompressedPayload> consumer) {
+            consumer.accept(this);
+        }
+    }
+
+
+    @Partition(column = "createdAt")
+    public static class Event {
+        public Long id;
+        public String name;
+        public Long createdAt;
+
+        public Event(Consumer<Event> consumer) {
+            consumer.accept(this);
+        }
+    }
+
+
+    public static class Token {
+        public Long id;
+        public String value;
+        @Expiry
+        public Long expiresAt;
+
+        public Token(Consumer<Token> consumer) {
+            consumer.accept(this);
+        }
+    }
+
+
     DB connect() {
         Config config = Config.of(c -> {
             c.driver = Config.Driver.SQLITE;
@@ -95,6 +169,23 @@ public final class APITest {
 
 
 
+    @Test
+    void upsert() {
+        DB db = connect();
+        insert();
+
+        User user = db.first(User.class);
+        user.age = 99;
+        System.out.println(db.upsert(user));
+        System.out.println(db.upsertAll(Arrays.asList(user, new User(u -> {
+            u.name = "user6";
+            u.age = 30;
+            u.vip = false;
+        }))));
+        db.findAll(User.class).forEach(DB::print);
+    }
+
+
     @Test
     void updateById() {
         DB db = connect();
@@ -110,6 +201,26 @@ public final class APITest {
 
 
 
+    @Test
+    void updateChanges() {
+        Config config = Config.of(c -> {
+            c.driver = Config.Driver.SQLITE;
+            c.url = "jdbc:sqlite:example.db";
+            c.trackChanges = true;
+        });
+        DB db = DB.connect(config);
+        db.tables(User.class, Book.class);
+        db.deleteAll(User.class);
+        insert();
+
+        User user = db.first(User.class);
+        System.out.println(db.update(user, user.id));
+        user.age = 61;
+        System.out.println(db.update(user, user.id));
+        DB.print(db.first(User.class));
+    }
+
+
     @Test
     void updateByCondition() {
         DB db = connect();
@@ -119,6 +230,18 @@ public final class APITest {
 
 
 
+    @Test
+    void bulkUpdate() {
+        DB db = connect();
+        insert();
+        long rows = db.bulkUpdate(new User(u -> u.vip = true), bulk -> bulk
+                .chunk(2)
+                .pause(10)
+                .progress((affected, progress) -> System.out.println(affected + " " + progress)), "age < ?", 25);
+        System.out.println(rows);
+    }
+
+
     @Test
     void findOneById() {
         DB db = connect();
@@ -137,6 +260,20 @@ public final class APITest {
     }
 
 
+    @Test
+    void print() {
+        User user = new User(u -> {
+            u.id = 1L;
+            u.name = "say \"hi\"\n";
+            u.age = 18;
+            u.vip = true;
+        });
+        StringBuilder builder = new StringBuilder();
+        DB.print(user, builder);
+        System.out.println(builder);
+    }
+
+
     @Test
     void findAll() {
         DB db = connect();
@@ -178,6 +315,19 @@ public final class APITest {
     }
 
 
+    @Test
+    void findParallel() {
+        DB db = connect();
+        insert();
+
+        List<User> users = db.findParallel(User.class, options -> options.where("age >= ?", 20));
+        users.forEach(DB::print);
+
+        long count = db.streamParallel(User.class, null).filter(u -> u.vip).count();
+        System.out.println(count);
+    }
+
+
     @Test
     void deleteAll() {
         DB db = connect();
@@ -202,6 +352,15 @@ public final class APITest {
     }
 
 
+    @Test
+    void bulkDelete() {
+        DB db = connect();
+        insert();
+        long rows = db.bulkDelete(User.class, bulk -> bulk.chunk(2).rate(1000), "vip = ?", true);
+        System.out.println(rows);
+    }
+
+
     @Test
     void deleteByIds() {
         DB db = connect();
@@ -236,6 +395,296 @@ public final class APITest {
     }
 
 
+    @Test
+    void shard() throws Exception {
+        DB db = DB.shard(
+                Config.of(c -> {c.driver = Config.Driver.SQLITE; c.url = "jdbc:sqlite:shard0.db";}),
+                Config.of(c -> {c.driver = Config.Driver.SQLITE; c.url = "jdbc:sqlite:shard1.db";}));
+        db.tables(User.class);
+        db.deleteAll(User.class);
+        for (int i = 0; i < 10; i++) {
+            int age = 20 + i;
+            db.insert(new User(u -> {u.name = "Lake"; u.age = age; u.vip = age % 2 == 0;}));
+        }
+
+        Assertions.assertEquals(10, db.count(User.class));
+        Assertions.assertEquals(24.5, db.average(User.class, "age"));
+        Assertions.assertEquals(29, db.max(User.class, "age").intValue());
+        Assertions.assertEquals(20, db.min(User.class, "age").intValue());
+        db.find(User.class, options -> options.order("age", Options.DESC).limit(3).offset(1)).forEach(DB::print);
+        db.findOne(User.class, db.last(User.class).id);
+        Map<Object, Statistics> groups = db.aggregateGroup(User.class, a -> a.count().average("age").group("vip"));
+        Assertions.assertEquals(2, groups.size());
+        Assertions.assertEquals(10, groups.values().stream().mapToLong(Statistics::count).sum());
+        Assertions.assertEquals(49.0, groups.values().stream().mapToDouble(s -> s.average("age")).sum());
+        Query<User> query = db.query(User.class).where("age >= ?").order("age", Options.DESC).limit().offset().compile();
+        List<User> page = query.list(22, 3, 1);
+        Assertions.assertEquals(3, page.size());
+        Assertions.assertEquals(28, (int) page.get(0).age);
+
+        Path path = Files.createTempFile("shard", ".csv");
+        try (OutputStream stream = Files.newOutputStream(path)) {
+            db.export(User.class, options -> options.select("name", "age", "vip"), stream, Format.CSV);
+        }
+        System.out.println(db.importFile(User.class, path, Format.CSV, null));
+        System.out.println(db.count(User.class));
+        Files.delete(path);
+        db.close();
+    }
+
+
+    @Test
+    void tenants() {
+        Tenants tenants = DB.tenants(TenantConfig.of(t -> {
+            t.directory = "tenants";
+            t.classes = Arrays.asList(User.class, Book.class);
+            t.maxOpen = 2;
+        }));
+        for (String tenant : Arrays.asList("acme", "globex", "initech", "acme")) {
+            tenants.run(tenant, db -> db.insert(new User(u -> {u.name = tenant; u.age = 30; u.vip = true;})));
+            System.out.println(tenant + " " + tenants.with(tenant, db -> db.count(User.class)) + " " + tenants.open());
+        }
+        tenants.close();
+    }
+
+
+    @Test
+    void insertAll() {
+        Config config = Config.of(c -> {
+            c.driver = Config.Driver.SQLITE;
+            c.url = "jdbc:sqlite:example.db";
+            c.idBlockSize = 100;
+        });
+        DB db = DB.connect(config);
+        db.tables(User.class);
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 250; i++) {
+            int age = i;
+            users.add(new User(u -> {u.name = "Lake"; u.age = age; u.vip = false;}));
+        }
+        System.out.println(db.insertAll(users) + " " + users.get(0).id + " " + users.get(249).id);
+        User upserted = new User(u -> {u.name = "Lake"; u.age = 1; u.vip = true;});
+        db.upsert(upserted);
+        User inserted = new User(u -> {u.name = "Lake"; u.age = 2; u.vip = true;});
+        db.insert(inserted);
+        Assertions.assertNotNull(upserted.id);
+        Assertions.assertTrue(upserted.id > users.get(249).id);
+        Assertions.assertTrue(inserted.id > upserted.id);
+        db.close();
+    }
+
+
+    @Test
+    void include() {
+        DB db = connect();
+        insert();
+        db.deleteAll(Book.class);
+        List<User> users = db.findAll(User.class);
+        Assertions.assertFalse(users.isEmpty());
+        for (User user : users) {
+            for (int i = 0; i < 2; i++) {
+                String name = user.name + "-book" + i;
+                db.insert(new Book(b -> {b.name = name; b.author = user.name; b.price = 10.0; b.userId = user.id;}));
+            }
+        }
+
+        List<Book> books = db.find(Book.class, options -> options.include("owner"));
+        Assertions.assertEquals(users.size() * 2, books.size());
+        for (Book book : books) {
+            Assertions.assertNotNull(book.owner);
+            Assertions.assertEquals(book.userId, book.owner.id);
+            Assertions.assertEquals(book.author, book.owner.name);
+        }
+        List<User> vips = db.find(User.class, options -> options.where("vip = ?", true).include("books"));
+        Assertions.assertFalse(vips.isEmpty());
+        for (User user : vips) {
+            Assertions.assertNotNull(user.books);
+            Assertions.assertEquals(2, user.books.size());
+            user.books.forEach(book -> Assertions.assertEquals(user.id, book.userId));
+        }
+    }
+
+
+    @Test
+    void load() {
+        DB db = connect();
+        db.deleteAll(Book.class);
+        db.insert(new Book(b -> {b.name = "book1"; b.author = "user1"; b.price = 10.0; b.intro = "A long introduction"; }));
+        db.insert(new Book(b -> {b.name = "book2"; b.author = "user2"; b.price = 20.0; b.intro = "Another long introduction"; }));
+
+        List<Book> books = db.findAll(Book.class);
+        books.forEach(DB::print);
+        db.load(books, "intro");
+        books.forEach(DB::print);
+    }
+
+
+    @Test
+    void query() {
+        DB db = connect();
+        insert();
+        Query<User> query = db.query(User.class).where("age <= ? && vip = ?").order("age", Options.DESC).limit().compile();
+        System.out.println(query);
+        List<User> list = query.list(24, true, 10);
+        list.forEach(DB::print);
+        Assertions.assertEquals(2, list.size());
+        Assertions.assertEquals(24, (int) list.get(0).age);
+        User user = query.one(30, false, 1);
+        Assertions.assertNotNull(user);
+        Assertions.assertEquals(22, (int) user.age);
+        Assertions.assertEquals(3, query.stream(30, true, 10).count());
+    }
+
+
+    @Test
+    void session() {
+        DB db = connect();
+        insert();
+        long id = db.first(User.class).id;
+        db.session(s -> {
+            User partial = s.find(User.class, options -> options.select("id", "name").where("id = ?", id)).get(0);
+            User user1 = s.findOne(User.class, id);
+            User user2 = s.find(User.class, options -> options.where("id = ?", id)).get(0);
+            Assertions.assertNotSame(partial, user1);
+            Assertions.assertNotNull(user1.age);
+            Assertions.assertSame(user1, user2);
+            Assertions.assertSame(user1, s.findOne(User.class, id));
+
+            s.update(new User(u -> u.age = 99), id);
+            Assertions.assertEquals(99, (int) s.findOne(User.class, id).age);
+            return null;
+        });
+    }
+
+
+    @Test
+    void search() {
+        DB db = connect();
+        db.deleteAll(Book.class);
+        db.insert(new Book(b -> {b.name = "book1"; b.author = "user1"; b.price = 10.0; b.intro = "An introduction to SQLite full-text search"; }));
+        db.insert(new Book(b -> {b.name = "book2"; b.author = "user2"; b.price = 20.0; b.intro = "Indexing and search in MySQL"; }));
+        db.insert(new Book(b -> {b.name = "book3"; b.author = "user3"; b.price = 30.0; b.intro = "Cooking for beginners"; }));
+
+        db.search(Book.class, "search", options -> options.where("price > ?", 5).limit(10)).forEach(DB::print);
+        db.searchHits(Book.class, "sqlite", null).forEach(System.out::println);
+    }
+
+
+    @Test
+    void compress() throws Exception {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            builder.append("{\"key\":").append(i).append(",\"title\":\"Lorem ipsum dolor sit amet\",\"vip\":").append(i % 2 == 0).append("},");
+        }
+        String body = builder.toString();
+        long[] sizes = new long[2];
+        for (boolean compress : new boolean[]{false, true}) {
+            Path path = Paths.get(compress ? "compressed.db" : "plain.db");
+            Files.deleteIfExists(path);
+            DB db = DB.connect(Config.of(c -> {c.driver = Config.Driver.SQLITE; c.url = "jdbc:sqlite:" + path;}));
+            db.tables(Payload.class, CompressedPayload.class);
+            if (compress) {
+                List<CompressedPayload> list = new ArrayList<>();
+                for (int i = 0; i < 5000; i++) {
+                    list.add(new CompressedPayload(p -> p.body = body));
+                }
+                db.insertAll(list);
+            } else {
+                List<Payload> list = new ArrayList<>();
+                for (int i = 0; i < 5000; i++) {
+                    list.add(new Payload(p -> p.body = body));
+                }
+                db.insertAll(list);
+            }
+            long start = System.nanoTime();
+            int rows = compress ? db.findAll(CompressedPayload.class).size() : db.findAll(Payload.class).size();
+            long scanMillis = (System.nanoTime() - start) / 1_000_000;
+            Assertions.assertEquals(5000, rows);
+            if (compress) {
+                CompressedPayload payload = new CompressedPayload(p -> p.body = body);
+                db.insert(payload);
+                Assertions.assertEquals(body, db.findOne(CompressedPayload.class, payload.id).body);
+                payload.body = body + "{}";
+                db.update(payload, payload.id);
+                Assertions.assertEquals(body + "{}", db.findOne(CompressedPayload.class, payload.id).body);
+                Assertions.assertEquals(body, db.first(CompressedPayload.class).body);
+            }
+            db.close();
+            sizes[compress ? 1 : 0] = Files.size(path);
+            System.out.printf("compress=%s rows=%d size=%dKB scan=%dms%n", compress, rows, Files.size(path) / 1024, scanMillis);
+        }
+        Assertions.assertTrue(sizes[1] < sizes[0]);
+    }
+
+
+    @Test
+    void partition() {
+        DB db = connect();
+        db.tables(Event.class);
+        long day = 24 * 60 * 60 * 1000L;
+        long start = 1696118400000L;
+        List<Event> list = new ArrayList<>();
+        for (int i = 0; i < 90; i++) {
+            long createdAt = start + i * day;
+            list.add(new Event(e -> {e.name = "event" + createdAt; e.createdAt = createdAt;}));
+        }
+        db.insertAll(list);
+        System.out.println(db.partitions(Event.class));
+        System.out.println(db.count(Event.class, "createdAt >= ?", start + 60 * day));
+        db.find(Event.class, options -> options.where("createdAt < ?", start + 3 * day).order("createdAt", Options.DESC)).forEach(DB::print);
+        System.out.println(db.dropPartitions(Event.class, start + 31 * day));
+        System.out.println(db.partitions(Event.class));
+    }
+
+
+    @Test
+    void expiry() {
+        DB db = connect();
+        db.tables(Token.class);
+        long now = System.currentTimeMillis();
+        List<Token> list = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            long expiresAt = now + (i % 2 == 0 ? -60000 : 60000);
+            list.add(new Token(t -> {t.value = "token" + expiresAt; t.expiresAt = expiresAt;}));
+        }
+        db.insertAll(list);
+        System.out.println(db.purge(Token.class));
+        System.out.println(db.count(Token.class));
+        System.out.println(db.purgeStats());
+        Assertions.assertTrue(db.purgeStats().lagMillis() >= 60000);
+    }
+
+
+    @Test
+    void replicas() {
+        Config config = Config.of(c -> {
+            c.driver = Config.Driver.SQLITE;
+            c.url = "jdbc:sqlite:example.db";
+            c.replicas = Arrays.asList("jdbc:sqlite:example.db", "jdbc:sqlite:example.db");
+            c.routing = Config.Routing.LEAST_OUTSTANDING;
+            c.readYourWritesMillis = 1000;
+        });
+        DB db = DB.connect(config);
+        db.tables(User.class, Book.class);
+        db.deleteAll(User.class);
+        insert();
+
+        System.out.println(db.count(User.class));
+        db.findAll(User.class).forEach(DB::print);
+    }
+
+
+    @Test
+    void exists() {
+        DB db = connect();
+        insert();
+
+        System.out.println(db.exists(User.class));
+        System.out.println(db.exists(User.class, "name = ?", "user2"));
+        System.out.println(db.exists(User.class, "age > ?", 100));
+    }
+
+
     @Test
     void count() {
         DB db = connect();
@@ -301,6 +750,75 @@ public final class APITest {
     }
 
 
+    @Test
+    void export() {
+        DB db = connect();
+        insert();
+
+        ByteArrayOutputStream csv = new ByteArrayOutputStream();
+        long rows = db.export(User.class, null, csv, Format.CSV);
+        System.out.println(rows);
+        System.out.println(csv);
+
+        ByteArrayOutputStream json = new ByteArrayOutputStream();
+        db.export(User.class, options -> options.where("vip = ?", true), json, Format.JSON_LINES);
+        System.out.println(json);
+    }
+
+
+    @Test
+    void importFile() throws Exception {
+        DB db = connect();
+        insert();
+
+        Path path = Files.createTempFile("users", ".csv");
+        try (OutputStream stream = Files.newOutputStream(path)) {
+            db.export(User.class, options -> options.select("uid", "name", "age", "vip"), stream, Format.CSV);
+        }
+        ImportReport report = db.importFile(User.class, path, Format.CSV, ImportOptions.of(o -> {
+            o.batchSize = 2;
+            o.dropIndexes = true;
+        }));
+        System.out.println(report);
+        System.out.println(db.count(User.class));
+        Files.delete(path);
+    }
+
+
+    @Test
+    void explain() {
+        Config config = Config.of(c -> {
+            c.driver = Config.Driver.SQLITE;
+            c.url = "jdbc:sqlite:example.db";
+            c.advisor = true;
+            c.advisorSampleRate = 1;
+        });
+        DB db = DB.connect(config);
+        db.tables(User.class, Book.class);
+        db.deleteAll(User.class);
+        insert();
+
+        System.out.println(db.explain(User.class, options -> options.where("uid = ?", 1).order("age", Options.DESC)));
+        db.find(User.class, options -> options.where("name = ? && age > ?", "user1", 10).order("age"));
+        System.out.println(db.advisor().report());
+    }
+
+
+    @Test
+    void aggregate() {
+        DB db = connect();
+        insert();
+
+        Statistics statistics = db.aggregate(User.class, a -> a
+                .count().sum("age").average("age").max("age").min("age")
+                .where("age <= ?", 50));
+        System.out.println(statistics);
+
+        Map<Object, Statistics> groups = db.aggregateGroup(User.class, a -> a.count().average("age").group("vip"));
+        groups.forEach((vip, s) -> System.out.println(vip + " -> " + s));
+    }
+
+
     @Test
     void drop() {
         DB db = connect();